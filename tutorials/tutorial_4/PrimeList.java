@@ -1,45 +1,70 @@
 package tutorials.tutorial_4;
 
+import java.util.AbstractList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 public class PrimeList {
 
-    private LinkedList<Integer> primes;
+    /** the sieve that finds the primes, shared by all prime lists */
+    private static final PrimeSieve SIEVE = new PrimeSieve();
+
+    /** the primes that this list was created with */
+    private final int[] head;
+    /** the primes generated after the head are the primes of SIEVE with the
+     *  indices [from, from + generated) */
+    private int from = -1;
+    private int generated;
 
     public PrimeList(LinkedList<Integer> primes) {
-        this.primes = primes;
+        head = new int[primes.size()];
+        int i = 0;
+        for (int p : primes) {
+            head[i++] = p;
+        }
     }
 
     public int size() {
-        return primes.size();
+        return head.length + generated;
     }
 
     public int lastPrime() {
-        return primes.getLast();
+        if (generated > 0) {
+            return (int) SIEVE.get(from + generated - 1);
+        }
+        if (head.length == 0) {
+            throw new NoSuchElementException();
+        }
+        return head[head.length - 1];
     }
 
     @Override
     public String toString() {
         return "PrimeList{"
-                + "primes=" + primes
+                + "primes=" + snapshot()
                 + '}';
     }
 
+    /**
+     * @effects returns a copy of the primes of this list; see also snapshot(),
+     *          which does not copy them
+     */
     public LinkedList<Integer> getPrimeList() {
-        return (LinkedList<Integer>) primes.clone();
+        return new LinkedList<Integer>(snapshot());
+    }
+
+    /**
+     * @effects returns an immutable view of the primes that this list has now
+     */
+    public List<Integer> snapshot() {
+        return new Snapshot(head, SIEVE.snapshot(), from, generated);
     }
 
     private boolean isPrime(int posInt) {
-        if (primes.contains(posInt)) {
-            return true;
-        }
-        for (int i = 2; i <= Math.sqrt(posInt); i++) {
-            if (posInt % i == 0) {
-                return false;
-            }
-        }
-        return true;
+        return SIEVE.isPrime(posInt);
     }
 
     public Iterator<Integer> iterator() {
@@ -58,19 +83,86 @@ public class PrimeList {
 
         @Override
         public boolean hasNext() {
-            return true;
+            // Integer.MAX_VALUE is the largest prime int
+            return lastPrime() < java.lang.Integer.MAX_VALUE;
         }
 
         @Override
         public java.lang.Integer next() {
-            int nextPrimeNumber = primeNumber + 1;
-            while (!isPrime(nextPrimeNumber)) {
-                nextPrimeNumber++;
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            if (from < 0) {
+                from = SIEVE.rank((long) head[head.length - 1] + 1);
+            }
+            int nextPrimeNumber = (int) SIEVE.get(from + generated);
+            generated++;
             index++;
-            primes.add(nextPrimeNumber);
+            primeNumber = nextPrimeNumber;
             return nextPrimeNumber;
         }
     }
 
+    /**
+     * @overview An immutable view of the primes of a PrimeList: its head,
+     *           followed by a range of the primes of a PrimeStore.
+     */
+    private static class Snapshot extends AbstractList<Integer> implements RandomAccess {
+
+        private final int[] head;
+        private final PrimeStore store;
+        private final int from;
+        private final int generated;
+
+        Snapshot(int[] head, PrimeStore store, int from, int generated) {
+            this.head = head;
+            this.store = store;
+            this.from = from;
+            this.generated = generated;
+        }
+
+        @Override
+        public int size() {
+            return head.length + generated;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("PrimeList.snapshot: " + index);
+            }
+            if (index < head.length) {
+                return head[index];
+            }
+            return (int) store.select(from + index - head.length);
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int index;
+                private long last;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size();
+                }
+
+                @Override
+                public Integer next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = index++;
+                    if (i < head.length) {
+                        return head[i];
+                    }
+                    // the generated primes are consecutive
+                    last = (i == head.length) ? store.select(from) : store.nextPrime(last);
+                    return (int) last;
+                }
+            };
+        }
+    }
+
 }
@@ -0,0 +1,220 @@
+package tutorials.tutorial_4;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * @overview A segmented Sieve of Eratosthenes, which finds the primes below
+ *           2<sup>32</sup> in increasing order. The sieve is extended one
+ *           segment at a time, as far as needed: each segment holds the flags
+ *           of 2<sup>18</sup> odd numbers in 32KB, so that it stays in the
+ *           CPU cache while the multiples of the base primes (the primes
+ *           below 2<sup>16</sup>) are crossed out.
+ *
+ *           <p>The primes found are kept in a {@link PrimeStore}, of which
+ *           {@link #snapshot()} returns an immutable view. A PrimeSieve is
+ *           thread-safe.
+ *
+ * @attributes
+ *  limit   Long    all the primes below limit have been found
+ *  count   Integer the number of primes below limit
+ *
+ * @author dmle
+ */
+public class PrimeSieve {
+
+    /** the numbers that can be sieved are below MAX */
+    public static final long MAX = 1L << 32;
+
+    /** the number of odd numbers in a segment */
+    private static final int SEGMENT_BITS = 1 << 18;
+
+    /** the odd primes below sqrt(MAX) */
+    private static final int[] BASE_PRIMES = basePrimes(1 << 16);
+
+    private final long[] segment = new long[SEGMENT_BITS / 64];
+
+    /** the primes found */
+    private PrimeStore store = new PrimeStore();
+
+    /**
+     * @effects initialise this as a sieve that has not found any prime yet
+     */
+    public PrimeSieve() {
+    }
+
+    /**
+     * @effects returns <tt>this.limit</tt>
+     */
+    public synchronized long limit() {
+        return store.limit();
+    }
+
+    /**
+     * @effects returns <tt>this.count</tt>
+     */
+    public synchronized int count() {
+        return store.count();
+    }
+
+    /**
+     * @effects returns the (immutable) store of the primes found so far
+     */
+    public synchronized PrimeStore snapshot() {
+        return store;
+    }
+
+    /**
+     * @requires n <= MAX
+     * @effects extends this as needed and returns the number of primes below
+     *          n
+     */
+    public synchronized int rank(long n) {
+        while (store.limit() < n) {
+            sieveSegment();
+        }
+        return store.rank(n);
+    }
+
+    /**
+     * @effects <pre>
+     *            if index < 0 \/ there are no more than index primes below MAX
+     *              throws IndexOutOfBoundsException
+     *            else
+     *              extends this as needed and returns the index-th prime
+     *              (starting from 0)</pre>
+     */
+    public synchronized long get(int index) {
+        while (index >= store.count() && store.limit() < MAX) {
+            sieveSegment();
+        }
+        if (index < 0 || index >= store.count()) {
+            throw new IndexOutOfBoundsException("PrimeSieve.get: " + index);
+        }
+        return store.select(index);
+    }
+
+    /**
+     * @requires n < MAX
+     * @effects returns <tt>true</tt> if n is prime, else returns
+     *          <tt>false</tt>. A number beyond the sieve is tested by trial
+     *          division by the base primes, without extending the sieve.
+     */
+    public synchronized boolean isPrime(long n) {
+        if (n >= MAX) {
+            throw new IllegalArgumentException("PrimeSieve.isPrime: " + n);
+        }
+        if (n < store.limit()) {
+            return store.isPrime(n);
+        }
+        return isPrimeByDivision(n);
+    }
+
+    /**
+     * @effects <pre>
+     *            if there is no prime p such that n < p < MAX
+     *              throws NoSuchElementException
+     *            else
+     *              returns the smallest such p</pre>
+     *          The sieve is extended if n is below or just beyond it; the
+     *          next prime after a number far beyond it is found by trial
+     *          division.
+     */
+    public synchronized long nextPrime(long n) {
+        if (n < 2) {
+            return 2;
+        }
+        while (n + 1 >= store.limit() && n + 1 < store.limit() + 2L * SEGMENT_BITS
+                && store.limit() < MAX) {
+            sieveSegment();
+        }
+        long p = store.nextPrime(n);
+        if (p >= 0) {
+            return p;
+        }
+        for (long c = n + 1; c < MAX; c++) {
+            if (isPrimeByDivision(c)) {
+                return c;
+            }
+        }
+        throw new NoSuchElementException("PrimeSieve.nextPrime: " + n);
+    }
+
+    private static boolean isPrimeByDivision(long n) {
+        if (n < 2) {
+            return false;
+        }
+        if ((n & 1) == 0) {
+            return n == 2;
+        }
+        for (int p : BASE_PRIMES) {
+            if ((long) p * p > n) {
+                break;
+            }
+            if (n % p == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @effects sieves the odd numbers of the next segment
+     *          <tt>(limit, limit + 2 * SEGMENT_BITS)</tt> and appends their
+     *          flags to the store
+     */
+    private void sieveSegment() {
+        long low = store.limit() + 1;
+        long high = low + 2L * SEGMENT_BITS;
+
+        Arrays.fill(segment, 0L);
+        if (low == 1) {
+            segment[0] = 1L;    // 1 is not prime
+        }
+        for (int p : BASE_PRIMES) {
+            long start = (long) p * p;
+            if (start >= high) {
+                break;
+            }
+            if (start < low) {
+                // the first odd multiple of p in the segment
+                start = (low + p - 1) / p * p;
+                if ((start & 1) == 0) {
+                    start += p;
+                }
+            }
+            for (int j = (int) ((start - low) >>> 1); j < SEGMENT_BITS; j += p) {
+                segment[j >>> 6] |= 1L << j;
+            }
+        }
+
+        // the unmarked bits are the primes
+        for (int w = 0; w < segment.length; w++) {
+            segment[w] = ~segment[w];
+        }
+        store = store.append(segment, segment.length);
+    }
+
+    /**
+     * @effects returns the odd primes below n, found by a simple sieve
+     */
+    private static int[] basePrimes(int n) {
+        boolean[] composite = new boolean[n];
+        int[] result = new int[n / 2];
+        int size = 0;
+        for (int i = 3; i < n; i += 2) {
+            if (!composite[i]) {
+                result[size++] = i;
+                for (long j = (long) i * i; j < n; j += 2 * i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PrimeSieve{limit=" + store.limit() + ", count=" + store.count() + '}';
+    }
+}
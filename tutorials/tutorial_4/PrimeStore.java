@@ -0,0 +1,261 @@
+package tutorials.tutorial_4;
+
+/**
+ * @overview A compact set of the primes below a limit, stored as a bitset of
+ *           the odd numbers: bit <tt>i</tt> is set if <tt>2i+1</tt> is prime
+ *           (2 is implicit). All the primes below 2<sup>32</sup> take
+ *           256MB of bits and 16MB of block ranks (see below), i.e. about 1.3
+ *           bytes per prime.
+ *
+ *           <p>The bits (and the ranks) are kept in fixed-size pages of 512KB
+ *           (and 32KB), which are allocated as the store grows and are never
+ *           copied or resized.
+ *
+ *           <p>The number of primes before every block of 512 bits is
+ *           recorded, so that <tt>isPrime</tt> takes constant time,
+ *           <tt>rank</tt> (the number of primes below a number) counts the
+ *           bits of at most 8 words and <tt>select</tt> (the n-th prime) is a
+ *           binary search over the blocks.
+ *
+ *           <p>A PrimeStore is immutable, so it may be read by any thread.
+ *           It is extended (by {@link PrimeSieve}) by appending the flags of
+ *           the next numbers, which creates a new store that shares the
+ *           pages of this one: the bits below the limit of a store never
+ *           change, so every store is a snapshot that costs no copying.
+ *
+ * @attributes
+ *  limit   Long    the primes below limit are stored
+ *  count   Integer the number of primes below limit
+ *
+ * @author dmle
+ */
+public class PrimeStore {
+
+    /** the number of words of a block */
+    private static final int BLOCK_WORDS = 8;
+
+    /** the number of words of a page (2<sup>16</sup>, i.e. 512KB) */
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_WORDS = 1 << PAGE_SHIFT;
+    private static final int PAGE_BLOCKS = PAGE_WORDS / BLOCK_WORDS;
+
+    /** the number of pages of the primes below PrimeSieve.MAX */
+    private static final int MAX_PAGES =
+            (int) ((words(PrimeSieve.MAX) + PAGE_WORDS - 1) >>> PAGE_SHIFT);
+
+    /** the pages of words, shared by all the stores appended from one
+     *  another; the pages beyond the limit are null or being filled */
+    private final long[][] pages;
+    /** the number of odd primes before each block, in pages of PAGE_BLOCKS */
+    private final int[][] rankPages;
+    private final int oddCount;
+    private final long limit;
+
+    /**
+     * @effects initialise this as an empty store (limit = 0)
+     */
+    public PrimeStore() {
+        this(new long[MAX_PAGES][], new int[MAX_PAGES][], 0, 0);
+    }
+
+    private PrimeStore(long[][] pages, int[][] rankPages, int oddCount, long limit) {
+        this.pages = pages;
+        this.rankPages = rankPages;
+        this.oddCount = oddCount;
+        this.limit = limit;
+    }
+
+    /**
+     * @effects returns <tt>this.limit</tt>
+     */
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * @effects returns <tt>this.count</tt>
+     */
+    public int count() {
+        return (limit > 2) ? oddCount + 1 : 0;
+    }
+
+    /**
+     * @effects <pre>
+     *            if n >= limit
+     *              throws IllegalArgumentException
+     *            else
+     *              returns true if n is prime, else returns false</pre>
+     */
+    public boolean isPrime(long n) {
+        if (n >= limit) {
+            throw new IllegalArgumentException("PrimeStore.isPrime: " + n
+                    + " is not below " + limit);
+        }
+        if (n < 3 || (n & 1) == 0) {
+            return n == 2;
+        }
+        long i = n >>> 1;
+        return (word((int) (i >>> 6)) & (1L << i)) != 0;
+    }
+
+    /**
+     * @effects returns the number of primes below min(n, limit)
+     */
+    public int rank(long n) {
+        n = Math.min(n, limit);
+        if (n <= 2) {
+            return 0;
+        }
+        return 1 + ((n == limit) ? oddCount : rankBits(n >>> 1));
+    }
+
+    /**
+     * @effects <pre>
+     *            if index < 0 \/ index >= count
+     *              throws IndexOutOfBoundsException
+     *            else
+     *              returns the index-th prime (starting from 0)</pre>
+     */
+    public long select(int index) {
+        if (index < 0 || index >= count()) {
+            throw new IndexOutOfBoundsException("PrimeStore.select: " + index);
+        }
+        if (index == 0) {
+            return 2;
+        }
+
+        // the last block that starts with at most k odd primes before it
+        int k = index - 1;
+        int lo = 0;
+        int hi = (int) ((words(limit) + BLOCK_WORDS - 1) / BLOCK_WORDS) - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockRank(mid) <= k) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        int w = lo * BLOCK_WORDS;
+        k -= blockRank(lo);
+        int bits;
+        while (k >= (bits = Long.bitCount(word(w)))) {
+            k -= bits;
+            w++;
+        }
+        long word = word(w);
+        for (; k > 0; k--) {
+            word &= word - 1;
+        }
+        long i = (long) w * 64 + Long.numberOfTrailingZeros(word);
+        return 2 * i + 1;
+    }
+
+    /**
+     * @effects returns the smallest prime p such that n < p < limit, or -1
+     *          if there is none
+     */
+    public long nextPrime(long n) {
+        if (n < 2) {
+            return (limit > 2) ? 2 : -1;
+        }
+        long i = (n + 1) >>> 1;   // the index of the first odd number > n
+        long end = limit >>> 1;
+        if (i >= end) {
+            return -1;
+        }
+        int w = (int) (i >>> 6);
+        long word = word(w) & (-1L << i);
+        int lastWord = (int) ((end - 1) >>> 6);
+        while (word == 0 && w < lastWord) {
+            word = word(++w);
+        }
+        if (word == 0) {
+            return -1;
+        }
+        long p = 2 * ((long) w * 64 + Long.numberOfTrailingZeros(word)) + 1;
+        return (p < limit) ? p : -1;
+    }
+
+    /**
+     * @requires this is the last store that was appended to (as the pages
+     *           beyond its limit are reused) /\ limit is a multiple of 128 /\
+     *           <tt>bits</tt> are the flags of the odd numbers
+     *           <tt>limit + 1, limit + 3, ...</tt>
+     * @effects returns the store of the primes of this and of the
+     *          <tt>64 * nwords</tt> odd numbers flagged in
+     *          <tt>bits[0..nwords)</tt>
+     */
+    PrimeStore append(long[] bits, int nwords) {
+        int w0 = (int) words(limit);
+        int w1 = w0 + nwords;
+
+        int count = oddCount;
+        long[] page = null;
+        int[] ranks = null;
+        for (int w = w0; w < w1; w++) {
+            int offset = w & (PAGE_WORDS - 1);
+            if (page == null || offset == 0) {
+                int p = w >>> PAGE_SHIFT;
+                if (pages[p] == null) {
+                    pages[p] = new long[PAGE_WORDS];
+                    rankPages[p] = new int[PAGE_BLOCKS];
+                }
+                page = pages[p];
+                ranks = rankPages[p];
+            }
+            if (offset % BLOCK_WORDS == 0) {
+                ranks[offset / BLOCK_WORDS] = count;
+            }
+            long word = bits[w - w0];
+            page[offset] = word;
+            count += Long.bitCount(word);
+        }
+
+        return new PrimeStore(pages, rankPages, count, (long) w1 * 128);
+    }
+
+    /**
+     * @effects returns the number of set bits below bit m
+     */
+    private int rankBits(long m) {
+        int w = (int) (m >>> 6);
+        int b = w / BLOCK_WORDS;
+        int r = blockRank(b);
+        for (int v = b * BLOCK_WORDS; v < w; v++) {
+            r += Long.bitCount(word(v));
+        }
+        if ((m & 63) != 0) {
+            r += Long.bitCount(word(w) & ((1L << m) - 1));
+        }
+        return r;
+    }
+
+    /**
+     * @effects returns the w-th word of the bits
+     */
+    private long word(int w) {
+        return pages[w >>> PAGE_SHIFT][w & (PAGE_WORDS - 1)];
+    }
+
+    /**
+     * @effects returns the number of odd primes before the b-th block
+     */
+    private int blockRank(int b) {
+        return rankPages[b / PAGE_BLOCKS][b % PAGE_BLOCKS];
+    }
+
+    /**
+     * @effects returns the number of words that hold the flags of the odd
+     *          numbers below n
+     */
+    private static long words(long n) {
+        return (n + 127) >>> 7;
+    }
+
+    @Override
+    public String toString() {
+        return "PrimeStore{limit=" + limit + ", count=" + count() + '}';
+    }
+}
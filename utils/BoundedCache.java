@@ -0,0 +1,480 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * @overview A bounded, thread-safe cache that maps keys to values, whose
+ *           total weight is at most <tt>maximumWeight</tt>. When adding an
+ *           entry exceeds this bound, entries are evicted according to the
+ *           eviction policy of the cache:
+ *           <ul>
+ *           <li>{@link Policy#LRU}: the least recently used entries are
+ *           evicted first.
+ *           <li>{@link Policy#TINY_LFU}: the W-TinyLFU policy. New entries
+ *           enter a small LRU <i>window</i>; an entry that leaves the window
+ *           is only admitted to the <i>main</i> space (a segmented LRU of a
+ *           <i>probation</i> and a <i>protected</i> segment) if it has been
+ *           used more frequently than the entry that it would evict. Usage
+ *           frequencies are estimated by a compact count-min sketch that is
+ *           periodically aged. This keeps frequently used entries in the
+ *           cache even when many one-off entries pass through it.
+ *           </ul>
+ *
+ *           <p>Each segment is a {@link ListMap} (ordered from the least to
+ *           the most recently used entry), so that all the operations take
+ *           constant time.
+ *
+ *           <p>The weight of an entry is given by a {@link Weigher} (by
+ *           default every entry weighs <tt>1</tt>, i.e. the maximum weight is
+ *           the maximum number of entries). The cache records the numbers of
+ *           hits, misses and evictions. <tt>null</tt> values are not cached.
+ *
+ * @author dmle
+ */
+public class BoundedCache {
+
+  /**
+   * @overview The eviction policies of a cache.
+   */
+  public static enum Policy {
+    LRU, TINY_LFU
+  }
+
+  /**
+   * @overview Computes the weight of a cache entry.
+   */
+  public static interface Weigher {
+    /**
+     * @effects returns the weight (<tt>>= 0</tt>) of the entry
+     *          (<tt>key,value</tt>)
+     */
+    int weigh(Object key, Object value);
+  }
+
+  /** the segments of the cache */
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  /** the percentages of the maximum weight given to the window and to the protected segment */
+  private static final int WINDOW_PERCENT = 1;
+  private static final int PROTECTED_PERCENT = 80;
+
+  private final Policy policy;
+  private final long maximumWeight;
+  private final Weigher weigher;
+
+  /** the segments, indexed by WINDOW, PROBATION and PROTECTED (LRU only uses WINDOW) */
+  private final ListMap[] segments;
+  private final long[] segmentWeights;
+  private final long windowMaximum;
+  private final long protectedMaximum;
+
+  /** the frequency sketch (TINY_LFU only) */
+  private final FrequencySketch sketch;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * @effects initialise this as an empty cache of at most
+   *          <tt>maximumSize</tt> entries that uses <tt>policy</tt>
+   */
+  public BoundedCache(long maximumSize, Policy policy) {
+    this(maximumSize, policy, null);
+  }
+
+  /**
+   * @effects <pre>
+   *            if maximumWeight < 0
+   *              throws NotPossibleException
+   *            else
+   *              initialise this as an empty cache of at most maximumWeight total
+   *              weight (as computed by weigher, or 1 per entry if weigher is null)
+   *              that uses policy</pre>
+   */
+  public BoundedCache(long maximumWeight, Policy policy, Weigher weigher)
+      throws NotPossibleException {
+    if (maximumWeight < 0)
+      throw new NotPossibleException("BoundedCache: negative maximum weight "
+          + maximumWeight);
+
+    this.policy = policy;
+    this.maximumWeight = maximumWeight;
+    this.weigher = weigher;
+
+    segments = new ListMap[] { new ListMap(), new ListMap(), new ListMap() };
+    segmentWeights = new long[3];
+
+    if (policy == Policy.TINY_LFU) {
+      // the window holds at least one entry, unless the cache holds none
+      windowMaximum = Math.min(maximumWeight,
+          Math.max(1, maximumWeight * WINDOW_PERCENT / 100));
+      protectedMaximum = (maximumWeight - windowMaximum) * PROTECTED_PERCENT
+          / 100;
+      // without a weigher the maximum weight is the number of entries
+      sketch = new FrequencySketch((weigher == null) ? maximumWeight : 4096);
+    } else {
+      windowMaximum = maximumWeight;
+      protectedMaximum = 0;
+      sketch = null;
+    }
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public long getMaximumWeight() {
+    return maximumWeight;
+  }
+
+  /**
+   * @effects if <tt>key</tt> is in this, records a hit and returns its value,
+   *          else records a miss and returns <tt>null</tt>
+   */
+  public synchronized Object get(Object key) {
+    if (sketch != null)
+      sketch.increment(key);
+
+    Node n = lookup(key);
+    if (n == null) {
+      missCount++;
+      return null;
+    }
+
+    hitCount++;
+    touch(n);
+    return n.value;
+  }
+
+  /**
+   * @effects if <tt>key</tt> is in this returns its value, else computes the
+   *          value using <tt>loader</tt>, adds it to this (unless it is
+   *          <tt>null</tt>) and returns it
+   */
+  public Object get(Object key, Function loader) {
+    Object v = get(key);
+    if (v == null) {
+      // load outside the lock so that slow loaders do not block other lookups
+      v = loader.apply(key);
+      if (v != null)
+        put(key, v);
+    }
+
+    return v;
+  }
+
+  /**
+   * @effects <pre>
+   *            if the weigher gives a negative weight for (key,value)
+   *              throws NotPossibleException
+   *            else
+   *              adds (key,value) to this, overriding any existing entry of key,
+   *              and evicts entries as necessary to keep the total weight within
+   *              the maximum weight. Returns the previous value of key or null.</pre>
+   */
+  public synchronized Object put(Object key, Object value)
+      throws NotPossibleException {
+    if (value == null)
+      throw new NullPointerException("BoundedCache.put: null value");
+
+    int weight = (weigher != null) ? weigher.weigh(key, value) : 1;
+    if (weight < 0)
+      throw new NotPossibleException("BoundedCache.put: negative weight "
+          + weight + " of " + key);
+
+    if (sketch != null)
+      sketch.increment(key);
+
+    Node n = lookup(key);
+    if (n != null) {
+      Object old = n.value;
+      n.value = value;
+      segmentWeights[n.segment] += weight - n.weight;
+      n.weight = weight;
+      touch(n);
+      evict();
+      return old;
+    }
+
+    n = new Node(key, value, weight);
+    n.segment = WINDOW;
+    segments[WINDOW].put(key, n);
+    segmentWeights[WINDOW] += weight;
+    evict();
+
+    return null;
+  }
+
+  /**
+   * @effects removes the entry of <tt>key</tt> from this (if any) and returns
+   *          its value
+   */
+  public synchronized Object remove(Object key) {
+    Node n = lookup(key);
+    if (n == null)
+      return null;
+
+    unlink(n);
+    return n.value;
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < segments.length; i++) {
+      segments[i].clear();
+      segmentWeights[i] = 0;
+    }
+  }
+
+  /**
+   * @effects returns the number of entries of this
+   */
+  public synchronized int size() {
+    return segments[WINDOW].size() + segments[PROBATION].size()
+        + segments[PROTECTED].size();
+  }
+
+  /**
+   * @effects returns the total weight of the entries of this
+   */
+  public synchronized long weight() {
+    return segmentWeights[WINDOW] + segmentWeights[PROBATION]
+        + segmentWeights[PROTECTED];
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @effects returns the ratio of hits to lookups, or <tt>1.0</tt> if there
+   *          has been no lookup
+   */
+  public synchronized double getHitRate() {
+    long requests = hitCount + missCount;
+    return (requests == 0) ? 1.0 : (double) hitCount / requests;
+  }
+
+  /**
+   * @effects resets the hit, miss and eviction counters to <tt>0</tt>
+   */
+  public synchronized void resetStats() {
+    hitCount = missCount = evictionCount = 0;
+  }
+
+  public synchronized String toString() {
+    return "BoundedCache(" + policy + ", size=" + size() + ", weight="
+        + weight() + "/" + maximumWeight + ", hits=" + hitCount + ", misses="
+        + missCount + ", evictions=" + evictionCount + ")";
+  }
+
+  /**
+   * @effects returns the entry of <tt>key</tt>, or <tt>null</tt>
+   */
+  private Node lookup(Object key) {
+    for (int i = 0; i < segments.length; i++) {
+      Node n = (Node) segments[i].get(key);
+      if (n != null)
+        return n;
+    }
+
+    return null;
+  }
+
+  /**
+   * @effects records an access to <tt>n</tt>: moves it to the most recently
+   *          used end of its segment, or (TINY_LFU) promotes it from the
+   *          probation to the protected segment
+   */
+  private void touch(Node n) {
+    if (n.segment == PROBATION) {
+      move(n, PROTECTED);
+      // demote the least recently used protected entries back to probation
+      while (segmentWeights[PROTECTED] > protectedMaximum
+          && segments[PROTECTED].size() > 1) {
+        move(first(PROTECTED), PROBATION);
+      }
+    } else {
+      ListMap segment = segments[n.segment];
+      segment.remove(n.key);
+      segment.put(n.key, n);
+    }
+  }
+
+  /**
+   * @effects evicts entries until the total weight is within the maximum
+   */
+  private void evict() {
+    if (policy == Policy.LRU) {
+      while (segmentWeights[WINDOW] > maximumWeight) {
+        evict(first(WINDOW));
+      }
+      return;
+    }
+
+    long mainMaximum = maximumWeight - windowMaximum;
+    while (segmentWeights[WINDOW] > windowMaximum) {
+      Node candidate = first(WINDOW);
+      unlink(candidate);
+
+      // make room in the main space, as long as the candidate is used more
+      // often than the victims
+      int candidateFreq = sketch.frequency(candidate.key);
+      while (segmentWeights[PROBATION] + segmentWeights[PROTECTED]
+          + candidate.weight > mainMaximum) {
+        Node victim = first(PROBATION);
+        if (victim == null)
+          victim = first(PROTECTED);
+        if (victim == null || sketch.frequency(victim.key) >= candidateFreq)
+          break;
+        evict(victim);
+      }
+
+      if (segmentWeights[PROBATION] + segmentWeights[PROTECTED]
+          + candidate.weight <= mainMaximum) {
+        candidate.segment = PROBATION;
+        segments[PROBATION].put(candidate.key, candidate);
+        segmentWeights[PROBATION] += candidate.weight;
+      } else {
+        evictionCount++;
+      }
+    }
+
+    // an entry of the main space may have grown by being updated
+    while (segmentWeights[PROBATION] + segmentWeights[PROTECTED] > mainMaximum) {
+      Node victim = first(PROBATION);
+      evict((victim != null) ? victim : first(PROTECTED));
+    }
+  }
+
+  /**
+   * @effects returns the least recently used entry of <tt>segment</tt>, or
+   *          <tt>null</tt> if it is empty
+   */
+  private Node first(int segment) {
+    Iterator it = segments[segment].values().iterator();
+    return it.hasNext() ? (Node) it.next() : null;
+  }
+
+  private void move(Node n, int segment) {
+    unlink(n);
+    n.segment = segment;
+    segments[segment].put(n.key, n);
+    segmentWeights[segment] += n.weight;
+  }
+
+  private void evict(Node n) {
+    unlink(n);
+    evictionCount++;
+  }
+
+  private void unlink(Node n) {
+    segments[n.segment].remove(n.key);
+    segmentWeights[n.segment] -= n.weight;
+  }
+
+  /**
+   * @overview A cache entry.
+   */
+  private static class Node {
+    private final Object key;
+    private Object value;
+    private int weight;
+    private int segment;
+
+    Node(Object key, Object value, int weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * @overview A count-min sketch of 4-bit counters that estimates how often
+   *           each key has been used recently. Each key maps to four counters
+   *           (in four different table words); its frequency is the minimum
+   *           of them. All counters are halved after a number of increments
+   *           proportional to the table size, so that old usage fades out.
+   */
+  private static class FrequencySketch {
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+        0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** each word holds sixteen 4-bit counters */
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long expectedEntries) {
+      int n = (int) Math.min(Math.max(expectedEntries, 16), 1 << 24);
+      int size = Integer.highestOneBit(n - 1) << 1;
+      table = new long[size];
+      tableMask = size - 1;
+      sampleSize = 10 * size;
+    }
+
+    int frequency(Object key) {
+      int h = spread(key.hashCode());
+      int start = (h & 3) << 2;
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(h, i);
+        int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+        min = Math.min(min, count);
+      }
+
+      return min;
+    }
+
+    void increment(Object key) {
+      int h = spread(key.hashCode());
+      int start = (h & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(h, i);
+        int offset = (start + i) << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+          table[index] += 1L << offset;
+          added = true;
+        }
+      }
+
+      if (added && ++additions == sampleSize)
+        reset();
+    }
+
+    /** halve all the counters */
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions /= 2;
+    }
+
+    private int indexOf(int h, int i) {
+      long hash = (h + SEEDS[i]) * SEEDS[i];
+      hash += (hash >>> 32);
+      return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+}
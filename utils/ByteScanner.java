@@ -0,0 +1,319 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * @overview A scanner of whitespace-separated tokens (numbers and words)
+ *           that works directly on a large, reusable byte buffer filled from an
+ *           input stream or channel. Unlike TextIO, it does not read the input
+ *           line by line and does not create a string for each line or number,
+ *           so that loading large numeric datasets is limited by I/O rather
+ *           than allocation.
+ *
+ *           <p>Tokens are separated by ASCII whitespace and control characters
+ *           (bytes <tt>0x00..0x20</tt>); all other bytes, including those of
+ *           non-ASCII UTF-8 or Latin-1 text, are part of a token. Numbers
+ *           have the syntax of TextIO (see {@link NumberParser}); a token
+ *           that is not a legal number causes a
+ *           <tt>NumberFormatException</tt> and is skipped.
+ *
+ *           <p>A ByteScanner is not thread-safe.
+ *
+ * @author dmle
+ */
+public class ByteScanner implements Closeable {
+  /** the default buffer size: 1MB */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private final ReadableByteChannel channel;
+
+  private byte[] buf;
+  private ByteBuffer wrapper;
+  /** the position of the next unread byte */
+  private int pos;
+  /** the end of the valid bytes */
+  private int limit;
+  private boolean endOfInput;
+
+  /** the current token, as a view of buf */
+  private final Token token = new Token();
+
+  public ByteScanner(InputStream in) {
+    this(Channels.newChannel(in), DEFAULT_BUFFER_SIZE);
+  }
+
+  public ByteScanner(ReadableByteChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @effects initialise this to scan the file named <tt>fileName</tt>; throws
+   *          NotPossibleException if it can not be opened
+   */
+  public ByteScanner(String fileName) throws NotPossibleException {
+    this(open(fileName), DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @requires bufferSize > 0
+   * @effects initialise this to scan <tt>channel</tt> using a buffer of
+   *          <tt>bufferSize</tt> bytes (which grows if a token is longer)
+   */
+  public ByteScanner(ReadableByteChannel channel, int bufferSize) {
+    this.channel = channel;
+    buf = new byte[bufferSize];
+    wrapper = ByteBuffer.wrap(buf);
+  }
+
+  private static ReadableByteChannel open(String fileName) throws NotPossibleException {
+    try {
+      return new FileInputStream(fileName).getChannel();
+    } catch (IOException e) {
+      throw new NotPossibleException("ByteScanner: can't open file \"" + fileName + "\"");
+    }
+  }
+
+  /**
+   * @effects skips whitespace and returns <tt>true</tt> if there is another
+   *          token, else returns <tt>false</tt>
+   */
+  public boolean hasNext() throws NotPossibleException {
+    while (true) {
+      while (pos < limit && (buf[pos] & 0xff) <= ' ')
+        pos++;
+      if (pos < limit)
+        return true;
+      if (!fill())
+        return false;
+    }
+  }
+
+  /**
+   * @effects reads the next token and returns it as an <tt>int</tt>; throws
+   *          NoSuchElementException at the end of input, or
+   *          NumberFormatException if the token is not an integer in the range
+   *          of <tt>int</tt>
+   */
+  public int nextInt() throws NoSuchElementException, NumberFormatException {
+    long x = nextLong();
+    if (x < Integer.MIN_VALUE || x > Integer.MAX_VALUE)
+      throw new NumberFormatException("Integer input outside of legal range, " + x + ".");
+    return (int) x;
+  }
+
+  /**
+   * @effects reads the next token and returns it as a <tt>long</tt>; throws
+   *          NoSuchElementException at the end of input, or
+   *          NumberFormatException if the token is not an integer in the range
+   *          of <tt>long</tt>
+   */
+  public long nextLong() throws NoSuchElementException, NumberFormatException {
+    Token t = next();
+    // fast path: unsigned integers of up to 18 digits
+    int n = t.length;
+    if (n <= 18) {
+      long x = 0;
+      int i = t.offset;
+      int end = i + n;
+      for (; i < end; i++) {
+        int d = buf[i] - '0';
+        if (d < 0 || d > 9)
+          break;
+        x = x * 10 + d;
+      }
+      if (i == end)
+        return x;
+    }
+
+    if (NumberParser.scanInteger(t, 0) != n)
+      throw new NumberFormatException("Illegal integer input, " + t + ".");
+    try {
+      return NumberParser.parseLong(t, 0, n);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Integer input outside of legal range, " + t + ".");
+    }
+  }
+
+  /**
+   * @effects reads the next token and returns it as a <tt>double</tt>; throws
+   *          NoSuchElementException at the end of input, or
+   *          NumberFormatException if the token is not a real number in the
+   *          range of <tt>double</tt>
+   */
+  public double nextDouble() throws NoSuchElementException, NumberFormatException {
+    Token t = next();
+    if (NumberParser.scanReal(t, 0) != t.length)
+      throw new NumberFormatException("Illegal floating point input, " + t + ".");
+    double x = NumberParser.parseDouble(t, 0, t.length);
+    if (Double.isInfinite(x))
+      throw new NumberFormatException("Floating point input outside of legal range, " + t + ".");
+    return x;
+  }
+
+  /**
+   * @effects reads the next token and returns it as a string (of its bytes
+   *          decoded as ISO-8859-1); throws NoSuchElementException at the end
+   *          of input
+   */
+  public String nextWord() throws NoSuchElementException {
+    Token t = next();
+    return new String(buf, t.offset, t.length, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * @effects reads the next token into <tt>dst</tt> (as many bytes of it as
+   *          fit) and returns its length, or returns <tt>-1</tt> at the end of
+   *          input
+   */
+  public int readWord(byte[] dst) {
+    if (!hasNext())
+      return -1;
+    Token t = next();
+    java.lang.System.arraycopy(buf, t.offset, dst, 0, Math.min(t.length, dst.length));
+    return t.length;
+  }
+
+  /**
+   * @effects reads integers into <tt>dst</tt> until it is full or the input
+   *          ends, and returns the number of integers read
+   */
+  public int readInts(int[] dst) throws NumberFormatException {
+    return readInts(dst, 0, dst.length);
+  }
+
+  /**
+   * @effects reads up to <tt>len</tt> integers into <tt>dst[off..]</tt> and
+   *          returns the number of integers read (less than <tt>len</tt> only
+   *          at the end of input)
+   */
+  public int readInts(int[] dst, int off, int len) throws NumberFormatException {
+    int n = 0;
+    while (n < len && hasNext()) {
+      dst[off + n++] = nextInt();
+    }
+    return n;
+  }
+
+  /**
+   * @effects reads doubles into <tt>dst</tt> until it is full or the input
+   *          ends, and returns the number of doubles read
+   */
+  public int readDoubles(double[] dst) throws NumberFormatException {
+    return readDoubles(dst, 0, dst.length);
+  }
+
+  /**
+   * @effects reads up to <tt>len</tt> doubles into <tt>dst[off..]</tt> and
+   *          returns the number of doubles read (less than <tt>len</tt> only
+   *          at the end of input)
+   */
+  public int readDoubles(double[] dst, int off, int len) throws NumberFormatException {
+    int n = 0;
+    while (n < len && hasNext()) {
+      dst[off + n++] = nextDouble();
+    }
+    return n;
+  }
+
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * @effects reads the next token into <tt>token</tt> and returns it; throws
+   *          NoSuchElementException at the end of input
+   */
+  private Token next() throws NoSuchElementException {
+    if (!hasNext())
+      throw new NoSuchElementException("ByteScanner: end of input");
+
+    int i = pos;
+    while (true) {
+      while (i < limit && (buf[i] & 0xff) > ' ')
+        i++;
+      if (i < limit || endOfInput)
+        break;
+
+      // the token may continue after the buffered bytes
+      int scanned = i - pos;
+      boolean more = fill();
+      i = pos + scanned;
+      if (!more)
+        break;
+    }
+
+    token.offset = pos;
+    token.length = i - pos;
+    pos = i;
+    return token;
+  }
+
+  /**
+   * @effects moves the unread bytes to the start of the buffer (growing it if
+   *          it is full) and reads more bytes; returns <tt>false</tt> if there
+   *          are none
+   */
+  private boolean fill() throws NotPossibleException {
+    if (endOfInput)
+      return false;
+
+    if (pos > 0) {
+      java.lang.System.arraycopy(buf, pos, buf, 0, limit - pos);
+      limit -= pos;
+      pos = 0;
+    } else if (limit == buf.length) {
+      buf = Arrays.copyOf(buf, buf.length * 2);
+      wrapper = ByteBuffer.wrap(buf);
+    }
+
+    try {
+      int read = 0;
+      while (read == 0) {
+        wrapper.limit(buf.length).position(limit);
+        read = channel.read(wrapper);
+      }
+      if (read < 0) {
+        endOfInput = true;
+        return false;
+      }
+      limit += read;
+      return true;
+    } catch (IOException e) {
+      throw new NotPossibleException("ByteScanner: error while reading input: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @overview A reusable view of a token in the buffer, so that numbers can
+   *           be parsed without copying them.
+   */
+  private class Token implements CharSequence {
+    int offset;
+    int length;
+
+    public int length() {
+      return length;
+    }
+
+    public char charAt(int index) {
+      return (char) (buf[offset + index] & 0xff);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      return new String(buf, offset + start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    public String toString() {
+      return new String(buf, offset, length, StandardCharsets.ISO_8859_1);
+    }
+  }
+}
@@ -0,0 +1,345 @@
+package utils;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * @overview A thread-safe {@link ListMap}, i.e. a map whose keys are kept in
+ *           the order that they were added, which can be shared by many
+ *           producer and consumer threads without external locking.
+ *
+ *           <p>Each new entry takes a sequence number from a shared counter.
+ *           The entries are indexed by key in a {@link ConcurrentHashMap} and
+ *           ordered by sequence number in a {@link ConcurrentSkipListMap}, so
+ *           that there is no global lock: reads and the ordering are
+ *           lock-free, and writes only lock the hash bin of their key in the
+ *           index (as <tt>ConcurrentHashMap</tt> does). Overriding an existing
+ *           entry keeps its position in the order.
+ *
+ *           <p>{@link #keyList()} returns a snapshot of the keys; the other
+ *           views and their iterators are weakly consistent (they reflect the
+ *           order at some point at or after their creation and never throw
+ *           <tt>ConcurrentModificationException</tt>).
+ *
+ *           <p>Like {@link ConcurrentHashMap}, this map does not allow
+ *           <tt>null</tt> keys or values.
+ *
+ * @author dmle
+ */
+public class ConcurrentListMap extends AbstractMap {
+  private final String name;
+
+  /** maps each key to its entry */
+  private final ConcurrentHashMap index;
+  /** maps each entry's sequence number to the entry, in order */
+  private final ConcurrentSkipListMap order;
+  /** the source of the sequence numbers */
+  private final AtomicLong sequence;
+
+  public ConcurrentListMap() {
+    this(null);
+  }
+
+  public ConcurrentListMap(String name) {
+    this.name = name;
+    index = new ConcurrentHashMap();
+    order = new ConcurrentSkipListMap();
+    sequence = new AtomicLong();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  public boolean isEmpty() {
+    return index.isEmpty();
+  }
+
+  public boolean containsKey(Object key) {
+    return index.containsKey(key);
+  }
+
+  public Object get(Object key) {
+    Node n = (Node) index.get(key);
+    return (n != null) ? n.value : null;
+  }
+
+  /**
+   * Insert entry into this map, overriding existing entry if one with the same
+   * key already exists.
+   */
+  public Object put(Object key, Object value) {
+    if (key == null || value == null)
+      throw new NullPointerException("ConcurrentListMap.put: null key or value");
+
+    while (true) {
+      Node n = (Node) index.get(key);
+      if (n != null) {
+        // overrides: atomically, so that concurrent puts of the same key
+        // each return a different old value
+        Object old = n.getAndSetValue(value);
+        if (index.get(key) == n)
+          return old;
+        // n was removed concurrently: try again
+        continue;
+      }
+
+      if (insert(key, value))
+        return null;
+    }
+  }
+
+  /**
+   * @effects if <tt>key</tt> is not in this, adds (<tt>key,value</tt>) and
+   *          returns <tt>null</tt>, else returns the current value of
+   *          <tt>key</tt>
+   */
+  public Object putIfAbsent(Object key, Object value) {
+    if (key == null || value == null)
+      throw new NullPointerException(
+          "ConcurrentListMap.putIfAbsent: null key or value");
+
+    while (true) {
+      Node n = (Node) index.get(key);
+      if (n != null)
+        return n.value;
+      if (insert(key, value))
+        return null;
+    }
+  }
+
+  public Object remove(Object key) {
+    Node n = (Node) index.remove(key);
+    if (n != null) {
+      order.remove(n.seq);
+      return n.value;
+    }
+
+    return null;
+  }
+
+  /**
+   * Remove the first entry
+   *
+   * @return the value of the removed entry, or <tt>null</tt> if this is empty
+   */
+  public Object removeFirst() {
+    while (true) {
+      Map.Entry e = order.pollFirstEntry();
+      if (e == null)
+        return null;
+      Node n = (Node) e.getValue();
+      // claim n, unless it has already been removed by key
+      if (index.remove(n.key, n))
+        return n.value;
+    }
+  }
+
+  /**
+   * Remove the last entry
+   *
+   * @return the value of the removed entry, or <tt>null</tt> if this is empty
+   */
+  public Object removeLast() {
+    while (true) {
+      Map.Entry e = order.pollLastEntry();
+      if (e == null)
+        return null;
+      Node n = (Node) e.getValue();
+      if (index.remove(n.key, n))
+        return n.value;
+    }
+  }
+
+  public void clear() {
+    while (removeFirst() != null)
+      ;
+  }
+
+  /**
+   * @effects returns an unmodifiable snapshot of the keys of this, in order
+   */
+  public List keyList() {
+    List keys = new ArrayList(index.size());
+    for (Iterator it = order.values().iterator(); it.hasNext();) {
+      Node n = (Node) it.next();
+      if (index.get(n.key) == n)
+        keys.add(n.key);
+    }
+
+    return Collections.unmodifiableList(keys);
+  }
+
+  /**
+   * @effects returns a weakly consistent view of the values of this, in the
+   *          order of their keys
+   */
+  public Collection values() {
+    return new AbstractCollection() {
+      public int size() {
+        return ConcurrentListMap.this.size();
+      }
+
+      public Iterator iterator() {
+        final Iterator it = entrySet().iterator();
+        return new Iterator() {
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          public Object next() {
+            return ((Map.Entry) it.next()).getValue();
+          }
+
+          public void remove() {
+            it.remove();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * @effects returns a weakly consistent view of the entries of this, in
+   *          order
+   */
+  public Set entrySet() {
+    return new AbstractSet() {
+      public int size() {
+        return ConcurrentListMap.this.size();
+      }
+
+      public void clear() {
+        ConcurrentListMap.this.clear();
+      }
+
+      public Iterator iterator() {
+        final Iterator it = order.values().iterator();
+        return new Iterator() {
+          private Node next = advance();
+          private Node lastReturned;
+
+          /** skip the nodes that have been removed or replaced */
+          private Node advance() {
+            while (it.hasNext()) {
+              Node n = (Node) it.next();
+              if (index.get(n.key) == n)
+                return n;
+            }
+            return null;
+          }
+
+          public boolean hasNext() {
+            return next != null;
+          }
+
+          public Object next() {
+            if (next == null)
+              throw new NoSuchElementException();
+            lastReturned = next;
+            next = advance();
+            return lastReturned;
+          }
+
+          public void remove() {
+            if (lastReturned == null)
+              throw new IllegalStateException();
+            if (index.remove(lastReturned.key, lastReturned))
+              order.remove(lastReturned.seq);
+            lastReturned = null;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * @effects if no entry of <tt>key</tt> exists adds a new entry
+   *          (<tt>key,value</tt>) at the end of the order and returns
+   *          <tt>true</tt>, else returns <tt>false</tt>
+   */
+  private boolean insert(Object key, Object value) {
+    Node n = new Node(key, value, sequence.incrementAndGet());
+    if (index.putIfAbsent(key, n) != null)
+      return false;
+
+    order.put(n.seq, n);
+    // n may have been removed before it was ordered: undo the ordering
+    if (index.get(key) != n)
+      order.remove(n.seq);
+
+    return true;
+  }
+
+  /**
+   * @overview An entry of the map, identified by its sequence number.
+   */
+  private static class Node implements Map.Entry {
+    private static final AtomicReferenceFieldUpdater VALUE =
+        AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+    private final Object key;
+    private final Long seq;
+    private volatile Object value;
+
+    Node(Object key, Object value, long seq) {
+      this.key = key;
+      this.value = value;
+      this.seq = seq;
+    }
+
+    public Object getKey() {
+      return key;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public Object setValue(Object value) {
+      if (value == null)
+        throw new NullPointerException();
+      return getAndSetValue(value);
+    }
+
+    /**
+     * @effects atomically sets the value of this to <tt>value</tt> and
+     *          returns the old value
+     */
+    Object getAndSetValue(Object value) {
+      return VALUE.getAndSet(this, value);
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry e = (Map.Entry) o;
+      return key.equals(e.getKey()) && value.equals(e.getValue());
+    }
+
+    public int hashCode() {
+      return key.hashCode() ^ value.hashCode();
+    }
+
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+}
@@ -0,0 +1,297 @@
+package utils;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formattable;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @overview A format string of {@link TextWriter#putf(String, Object...)} that
+ *           has been parsed once, so that it can be applied to many argument
+ *           lists without the JDK <tt>Formatter</tt>. Parsed format strings
+ *           are kept in a small shared cache, which is a concurrent map so
+ *           that writers on different threads do not contend for a lock.
+ *
+ *           <p>Only the common specifiers are handled: <tt>%d</tt> (of a
+ *           <tt>byte</tt>, <tt>short</tt>, <tt>int</tt> or <tt>long</tt>),
+ *           <tt>%s</tt>, <tt>%f</tt> (of a <tt>float</tt> or
+ *           <tt>double</tt>), <tt>%n</tt> and <tt>%%</tt>, with an optional
+ *           width, precision (for <tt>%f</tt>) and the flags <tt>'-'</tt> and
+ *           <tt>'0'</tt>. For any other format string, argument or locale,
+ *           {@link #appendTo(StringBuilder, Object[])} returns <tt>false</tt>
+ *           and the caller must use a <tt>Formatter</tt>, so that the output
+ *           is always that of <tt>String.format</tt>.
+ *
+ * @author dmle
+ */
+final class FormatString {
+  /** the maximum number of parsed format strings that are cached */
+  private static final int CACHE_SIZE = 256;
+
+  /** the parsed format strings; cleared when it reaches CACHE_SIZE entries */
+  private static final ConcurrentHashMap<String, FormatString> cache =
+      new ConcurrentHashMap<String, FormatString>();
+
+  private static final String LINE_SEPARATOR = java.lang.System.lineSeparator();
+
+  private static final long[] POW10 = { 1L, 10L, 100L, 1000L, 10000L,
+      100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+
+  /** the last default locale checked, and whether it formats digits as ASCII */
+  private static volatile Locale checkedLocale;
+  private static volatile boolean asciiLocale;
+
+  /** the specifiers, or null if the format string has others */
+  private final Spec[] specs;
+  /** the text after the last specifier */
+  private final String suffix;
+
+  private FormatString(String format) {
+    List<Spec> list = new ArrayList<>();
+    StringBuilder text = new StringBuilder();
+    boolean fast = true;
+
+    int n = format.length();
+    int i = 0;
+    while (i < n && fast) {
+      char c = format.charAt(i++);
+      if (c != '%') {
+        text.append(c);
+        continue;
+      }
+
+      // %[flags][width][.precision]conversion
+      boolean left = false, zero = false, repeated = false;
+      for (; i < n; i++) {
+        c = format.charAt(i);
+        if (c == '-') {
+          repeated |= left;
+          left = true;
+        } else if (c == '0') {
+          repeated |= zero;
+          zero = true;
+        } else {
+          break;
+        }
+      }
+      int width = -1;
+      int start = i;
+      while (i < n && Character.isDigit(format.charAt(i)))
+        i++;
+      if (i > start) {
+        if (i - start > 9) {
+          fast = false;
+          break;
+        }
+        width = Integer.parseInt(format.substring(start, i));
+      }
+      int precision = -1;
+      if (i < n && format.charAt(i) == '.') {
+        start = ++i;
+        while (i < n && Character.isDigit(format.charAt(i)))
+          i++;
+        if (i == start || i - start > 9) {
+          fast = false;
+          break;
+        }
+        precision = Integer.parseInt(format.substring(start, i));
+      }
+      // a repeated flag (e.g. %00d) is an error of the Formatter
+      if (i >= n || repeated || (left || zero) && width < 0 || left && zero) {
+        fast = false;
+        break;
+      }
+
+      c = format.charAt(i++);
+      boolean plain = !left && !zero && width < 0 && precision < 0;
+      if (c == 'n' && plain) {
+        text.append(LINE_SEPARATOR);
+      } else if (c == '%' && plain) {
+        text.append('%');
+      } else if (c == 'd' && precision < 0 || c == 's' && precision < 0
+          && !zero || c == 'f') {
+        list.add(new Spec(text.toString(), c, width,
+            (c == 'f' && precision < 0) ? 6 : precision, left, zero));
+        text.setLength(0);
+      } else {
+        fast = false;
+      }
+    }
+
+    specs = fast ? list.toArray(new Spec[list.size()]) : null;
+    suffix = text.toString();
+  }
+
+  /**
+   * @effects returns the parsed form of <tt>format</tt>
+   */
+  static FormatString compile(String format) {
+    FormatString f = cache.get(format);
+    if (f == null) {
+      f = new FormatString(format);
+      if (cache.size() >= CACHE_SIZE)
+        cache.clear();
+      cache.put(format, f);
+    }
+    return f;
+  }
+
+  /**
+   * @effects if this format string, <tt>args</tt> and the default locale can
+   *          be handled without a <tt>Formatter</tt>, appends the formatted
+   *          output to <tt>sb</tt> and returns <tt>true</tt>, else leaves
+   *          <tt>sb</tt> unchanged and returns <tt>false</tt>
+   */
+  boolean appendTo(StringBuilder sb, Object[] args) {
+    if (specs == null || args == null || args.length < specs.length
+        || !isAsciiLocale())
+      return false;
+
+    for (int k = 0; k < specs.length; k++) {
+      Object arg = args[k];
+      switch (specs[k].conversion) {
+      case 'd':
+        if (!(arg instanceof Integer || arg instanceof Long
+            || arg instanceof Short || arg instanceof Byte))
+          return false;
+        break;
+      case 's':
+        if (arg instanceof Formattable)
+          return false;
+        break;
+      default:
+        if (!(arg instanceof Double || arg instanceof Float))
+          return false;
+      }
+    }
+
+    int mark = sb.length();
+    for (int k = 0; k < specs.length; k++) {
+      Spec spec = specs[k];
+      sb.append(spec.prefix);
+      int start = sb.length();
+      Object arg = args[k];
+      switch (spec.conversion) {
+      case 'd':
+        sb.append(((Number) arg).longValue());
+        break;
+      case 's':
+        sb.append(String.valueOf(arg));
+        break;
+      default:
+        if (!appendFixed(sb, ((Number) arg).doubleValue(), spec.precision)) {
+          sb.setLength(mark);
+          return false;
+        }
+      }
+      pad(sb, start, spec.width, spec.leftJustify, spec.zeroPad);
+    }
+    sb.append(suffix);
+
+    return true;
+  }
+
+  /**
+   * @effects pads the text <tt>sb[start..]</tt> to <tt>width</tt> characters:
+   *          with spaces after it (if <tt>left</tt>), with zeros after its
+   *          sign (if <tt>zero</tt>) or with spaces before it
+   */
+  static void pad(StringBuilder sb, int start, int width, boolean left,
+      boolean zero) {
+    int n = width - (sb.length() - start);
+    if (n <= 0)
+      return;
+
+    if (left) {
+      for (int i = 0; i < n; i++)
+        sb.append(' ');
+    } else {
+      char c = ' ';
+      if (zero) {
+        c = '0';
+        if (sb.charAt(start) == '-')
+          start++;
+      }
+      char[] fill = new char[n];
+      Arrays.fill(fill, c);
+      sb.insert(start, fill);
+    }
+  }
+
+  /**
+   * @effects appends <tt>x</tt> with <tt>precision</tt> digits after the
+   *          decimal point to <tt>sb</tt>, as <tt>%.precisionf</tt> does, and
+   *          returns <tt>true</tt>; returns <tt>false</tt> if <tt>x</tt> is too
+   *          large or so close to a rounding tie that the result can only be
+   *          decided by a <tt>Formatter</tt>
+   */
+  private static boolean appendFixed(StringBuilder sb, double x, int precision) {
+    if (precision >= POW10.length)
+      return false;
+
+    double scaled = Math.abs(x) * POW10[precision];
+    if (!(scaled < 1e9))    // also NaN
+      return false;
+    long units = (long) scaled;
+    double fraction = scaled - units;
+    if (Math.abs(fraction - 0.5) < 1e-6)
+      return false;
+    if (fraction > 0.5)
+      units++;
+
+    // the sign of -0.0 and of negative numbers that round to zero is kept
+    if (Math.copySign(1.0, x) < 0)
+      sb.append('-');
+    sb.append(units / POW10[precision]);
+    if (precision > 0) {
+      sb.append('.');
+      long digits = units % POW10[precision];
+      for (int i = precision - 1; i > 0 && digits < POW10[i]; i--)
+        sb.append('0');
+      sb.append(digits);
+    }
+
+    return true;
+  }
+
+  /**
+   * @effects returns <tt>true</tt> if the default format locale writes
+   *          numbers with ASCII digits and a <tt>'.'</tt> decimal separator
+   */
+  private static boolean isAsciiLocale() {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    if (locale != checkedLocale) {
+      DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+      asciiLocale = symbols.getZeroDigit() == '0'
+          && symbols.getDecimalSeparator() == '.'
+          && symbols.getMinusSign() == '-';
+      checkedLocale = locale;
+    }
+    return asciiLocale;
+  }
+
+  /**
+   * @overview A specifier and the text before it.
+   */
+  private static class Spec {
+    final String prefix;
+    final char conversion;
+    final int width;
+    final int precision;
+    final boolean leftJustify;
+    final boolean zeroPad;
+
+    Spec(String prefix, char conversion, int width, int precision,
+        boolean leftJustify, boolean zeroPad) {
+      this.prefix = prefix;
+      this.conversion = conversion;
+      this.width = width;
+      this.precision = precision;
+      this.leftJustify = leftJustify;
+      this.zeroPad = zeroPad;
+    }
+  }
+}
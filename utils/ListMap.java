@@ -1,21 +1,80 @@
 /**
- * A helper class to store a Map in which keys are stored in the order 
- * that they were added to the map. 
+ * A helper class to store a Map in which keys are stored in the order
+ * that they were added to the map.
  * @author Duc M Le  <a href="mailto:dmle@doc.ic.ac.uk"><i>dmle@doc.ic.ac.uk</i></a>
  * @version 1.0
  * Department of Computing, Imperial College
  */
 package utils;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSequentialList;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+/**
+ * @overview The map entries are kept in a doubly-linked list (in insertion
+ *           order), and the super {@link HashMap} maps each key to its list
+ *           entry. Thus <tt>put</tt>, <tt>get</tt>, <tt>remove</tt>,
+ *           <tt>removeFirst</tt> and <tt>removeLast</tt> all take constant
+ *           time, and {@link #keyList()} and {@link #values()} are live views
+ *           of the list (in the current order) that cost nothing to obtain.
+ *
+ *           <p>Small maps (of up to {@link #SMALL_LIMIT} entries, e.g. the
+ *           constructor arguments of a domain object) use a compact
+ *           representation instead: the keys and values are interleaved in one
+ *           flat array that is searched linearly, so no entry objects or hash
+ *           table are created. A small map is promoted automatically to the
+ *           linked representation when it grows beyond the limit.
+ *
+ *           <p>Overriding an existing entry keeps its position in the order.
+ *
+ *           <p>A serialized map keeps its entries, their order and its
+ *           representation: the super map writes the keys and entries of the
+ *           linked representation, and this writes the key order (or the
+ *           entries of the compact representation) after them.
+ */
 public class ListMap extends HashMap {
+  /** the maximum number of entries of a map in the compact representation */
+  public static final int SMALL_LIMIT = 8;
+
   private String name;
-  private List keys;
-  private List valList;
+
+  /** the maximum number of entries that this keeps in the compact representation */
+  private final int smallLimit;
+
+  /**
+   * the compact representation: keys at even and values at odd positions, in
+   * order; <tt>null</tt> if this has not yet stored any entry or has been
+   * promoted to the linked representation
+   */
+  private transient Object[] small;
+  private transient int smallSize;
+
+  /** whether this uses the linked representation */
+  private transient boolean linked;
+
+  /** the first and last entries in the order */
+  private transient Entry head;
+  private transient Entry tail;
+
+  /** the number of structural modifications, used by the iterators to fail-fast */
+  private transient int changes;
 
   /**
    * The allowed NULL key
@@ -27,10 +86,58 @@ public class ListMap extends HashMap {
   }
 
   public ListMap(String name) {
+    this(name, SMALL_LIMIT);
+  }
+
+  /**
+   * @effects initialise this as an empty map named <tt>name</tt> that keeps up
+   *          to <tt>smallLimit</tt> entries in the compact representation (use
+   *          <tt>0</tt> for the linked representation only)
+   */
+  ListMap(String name, int smallLimit) {
     super();
-    keys = new ArrayList();
-    valList = new ArrayList();
     this.name = name;
+    this.smallLimit = smallLimit;
+    linked = (smallLimit == 0);
+  }
+
+  public int size() {
+    return linked ? super.size() : smallSize;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public boolean containsKey(Object key) {
+    return linked ? super.containsKey(key) : smallIndexOf(key) >= 0;
+  }
+
+  public Object get(Object key) {
+    if (!linked) {
+      int i = smallIndexOf(key);
+      return (i >= 0) ? small[2 * i + 1] : null;
+    }
+
+    Entry e = (Entry) super.get(key);
+    return (e != null) ? e.value : null;
+  }
+
+  public boolean containsValue(Object value) {
+    if (!linked) {
+      for (int i = 1; i < 2 * smallSize; i += 2) {
+        if (value == null ? small[i] == null : value.equals(small[i]))
+          return true;
+      }
+      return false;
+    }
+
+    for (Entry e = head; e != null; e = e.after) {
+      if (value == null ? e.value == null : value.equals(e.value))
+        return true;
+    }
+
+    return false;
   }
 
   /**
@@ -38,16 +145,60 @@ public class ListMap extends HashMap {
    * key already exists.
    */
   public Object put(Object key, Object value) {
-    int index = keys.indexOf(key);
-    if (index > -1) {
+    if (!linked) {
+      int i = smallIndexOf(key);
+      if (i >= 0) {
+        // overrides
+        Object old = small[2 * i + 1];
+        small[2 * i + 1] = value;
+        return old;
+      }
+
+      if (smallSize < smallLimit) {
+        if (small == null) {
+          small = new Object[2 * Math.min(4, smallLimit)];
+        } else if (2 * smallSize == small.length) {
+          Object[] a = new Object[2 * smallLimit];
+          java.lang.System.arraycopy(small, 0, a, 0, small.length);
+          small = a;
+        }
+        small[2 * smallSize] = key;
+        small[2 * smallSize + 1] = value;
+        smallSize++;
+        changes++;
+        return null;
+      }
+
+      promote();
+    }
+
+    Entry e = (Entry) super.get(key);
+    if (e != null) {
       // overrides
-      keys.set(index, key);
-      valList.set(index, value);
+      Object old = e.value;
+      e.value = value;
+      return old;
+    }
+
+    e = new Entry(key, value);
+    super.put(key, e);
+    if (tail == null) {
+      head = e;
     } else {
-      keys.add(key);
-      valList.add(value);
+      tail.after = e;
+      e.before = tail;
+    }
+    tail = e;
+    changes++;
+
+    return null;
+  }
+
+  public void putAll(Map m) {
+    for (Iterator it = m.entrySet().iterator(); it.hasNext();) {
+      Map.Entry e = (Map.Entry) it.next();
+      put(e.getKey(), e.getValue());
     }
-    return super.put(key, value);
   }
 
   // /**
@@ -62,33 +213,128 @@ public class ListMap extends HashMap {
   // }
 
   public Object remove(Object key) {
-    if (keys != null) {
-      int i = keys.indexOf(key);
-      if (i > -1)
-        return valList.remove(i);
+    if (!linked) {
+      int i = smallIndexOf(key);
+      return (i >= 0) ? smallRemove(i) : null;
+    }
+
+    Entry e = (Entry) super.remove(key);
+    if (e != null) {
+      unlink(e);
+      return e.value;
     }
 
     return null;
   }
 
+  /**
+   * @effects returns the keys of this in order. The result is a live view of
+   *          this: removing a key from it removes the entry from this.
+   */
   public List keyList() {
-    return keys;
+    return new EntryList() {
+      Object element(Map.Entry e) {
+        return e.getKey();
+      }
+
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+    };
   }
 
+  /**
+   * @effects returns the values of this in the order of their keys. The result
+   *          is a live {@link List} view of this that supports <tt>set</tt>
+   *          and <tt>remove</tt>.
+   */
   public Collection values() {
-    return valList;
+    return new EntryList() {
+      Object element(Map.Entry e) {
+        return e.getValue();
+      }
+
+      Object setElement(Map.Entry e, Object o) {
+        return e.setValue(o);
+      }
+    };
+  }
+
+  public Set keySet() {
+    return new AbstractSet() {
+      public int size() {
+        return ListMap.this.size();
+      }
+
+      public Iterator iterator() {
+        return keyList().iterator();
+      }
+
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+
+      public boolean remove(Object o) {
+        if (!containsKey(o))
+          return false;
+        ListMap.this.remove(o);
+        return true;
+      }
+
+      public void clear() {
+        ListMap.this.clear();
+      }
+    };
+  }
+
+  public Set entrySet() {
+    return new AbstractSet() {
+      public int size() {
+        return ListMap.this.size();
+      }
+
+      public Iterator iterator() {
+        return entryIterator(0);
+      }
+
+      public boolean contains(Object o) {
+        if (!(o instanceof Map.Entry))
+          return false;
+        Map.Entry e = (Map.Entry) o;
+        Object k = e.getKey();
+        if (!containsKey(k))
+          return false;
+        Object v = get(k);
+        return (v == null) ? e.getValue() == null : v.equals(e.getValue());
+      }
+
+      public boolean remove(Object o) {
+        if (!contains(o))
+          return false;
+        ListMap.this.remove(((Map.Entry) o).getKey());
+        return true;
+      }
+
+      public void clear() {
+        ListMap.this.clear();
+      }
+    };
   }
 
   /**
    * Remove the first entry
-   * 
+   *
    * @return
    */
   public Object removeFirst() {
-    if (!keys.isEmpty()) {
-      Object fk = keys.remove(0);
-      Object o = remove(fk);
-      return o;
+    if (!linked)
+      return (smallSize > 0) ? smallRemove(0) : null;
+
+    if (head != null) {
+      Entry e = head;
+      super.remove(e.key);
+      unlink(e);
+      return e.value;
     }
 
     return null;
@@ -96,14 +342,18 @@ public class ListMap extends HashMap {
 
   /**
    * Remove the last entry
-   * 
+   *
    * @return
    */
   public Object removeLast() {
-    if (!keys.isEmpty()) {
-      Object fk = keys.remove(keys.size() - 1);
-      Object o = remove(fk);
-      return o;
+    if (!linked)
+      return (smallSize > 0) ? smallRemove(smallSize - 1) : null;
+
+    if (tail != null) {
+      Entry e = tail;
+      super.remove(e.key);
+      unlink(e);
+      return e.value;
     }
 
     return null;
@@ -113,7 +363,10 @@ public class ListMap extends HashMap {
    * Add a (key,value) pair to an existing list of the map. If there is already
    * a value of this key in the map, then create a collection object to hold
    * this and the new value.
-   * 
+   * <p>
+   * Use {@link ListMultiMap} instead if the values of every key are to be
+   * kept in the same representation.
+   *
    * @param key
    * @param value
    */
@@ -140,12 +393,594 @@ public class ListMap extends HashMap {
   }
 
   public void clear() {
-    keys.clear();
-    valList.clear();
     super.clear();
+    head = tail = null;
+    small = null;
+    smallSize = 0;
+    linked = (smallLimit == 0);
+    changes++;
   }
 
   public String getName() {
     return name;
   }
+
+  public Object clone() {
+    ListMap m = new ListMap(getName(), smallLimit);
+    m.putAll(this);
+    return m;
+  }
+
+  // Map's default methods are re-defined in terms of the basic operations
+  // above because HashMap's versions would operate on the internal entries
+
+  public Object getOrDefault(Object key, Object defaultValue) {
+    return containsKey(key) ? get(key) : defaultValue;
+  }
+
+  public Object putIfAbsent(Object key, Object value) {
+    Object v = get(key);
+    if (v == null)
+      v = put(key, value);
+
+    return v;
+  }
+
+  public boolean remove(Object key, Object value) {
+    if (!containsKey(key))
+      return false;
+    Object v = get(key);
+    if (v == null ? value != null : !v.equals(value))
+      return false;
+    remove(key);
+    return true;
+  }
+
+  public boolean replace(Object key, Object oldValue, Object newValue) {
+    if (!containsKey(key))
+      return false;
+    Object v = get(key);
+    if (v == null ? oldValue != null : !v.equals(oldValue))
+      return false;
+    put(key, newValue);
+    return true;
+  }
+
+  public Object replace(Object key, Object value) {
+    return containsKey(key) ? put(key, value) : null;
+  }
+
+  public Object computeIfAbsent(Object key, Function mappingFunction) {
+    Object v = get(key);
+    if (v == null) {
+      v = mappingFunction.apply(key);
+      if (v != null)
+        put(key, v);
+    }
+
+    return v;
+  }
+
+  public Object computeIfPresent(Object key, BiFunction remappingFunction) {
+    Object v = get(key);
+    if (v != null) {
+      v = remappingFunction.apply(key, v);
+      if (v != null)
+        put(key, v);
+      else
+        remove(key);
+    }
+
+    return v;
+  }
+
+  public Object compute(Object key, BiFunction remappingFunction) {
+    Object v = remappingFunction.apply(key, get(key));
+    if (v != null)
+      put(key, v);
+    else if (containsKey(key))
+      remove(key);
+
+    return v;
+  }
+
+  public Object merge(Object key, Object value, BiFunction remappingFunction) {
+    Object old = get(key);
+    Object v = (old == null) ? value : remappingFunction.apply(old, value);
+    if (v != null)
+      put(key, v);
+    else
+      remove(key);
+
+    return v;
+  }
+
+  public void forEach(BiConsumer action) {
+    for (Iterator it = entryIterator(0); it.hasNext();) {
+      Map.Entry e = (Map.Entry) it.next();
+      action.accept(e.getKey(), e.getValue());
+    }
+  }
+
+  public void replaceAll(BiFunction function) {
+    for (Iterator it = entryIterator(0); it.hasNext();) {
+      Map.Entry e = (Map.Entry) it.next();
+      e.setValue(function.apply(e.getKey(), e.getValue()));
+    }
+  }
+
+  /**
+   * @requires <tt>0 <= index <= size</tt>
+   * @effects returns a list iterator over the entries (i.e.
+   *          {@link java.util.Map.Entry} objects) of this, in order, starting
+   *          at <tt>index</tt>. The iterator's <tt>remove</tt> removes the
+   *          entry from this, and the entries' <tt>setValue</tt> writes
+   *          through to this.
+   *          <p>
+   *          All the views of this (e.g. {@link #keyList()},
+   *          {@link #values()}) are built on this method.
+   */
+  protected ListIterator entryIterator(int index) {
+    return linked ? new EntryIterator(index) : new SmallIterator(index);
+  }
+
+  /**
+   * @requires <tt>!linked</tt>
+   * @effects if <tt>key</tt> is in the compact representation returns its
+   *          entry index, else returns <tt>-1</tt>
+   */
+  private int smallIndexOf(Object key) {
+    // keys are typically shared constants (e.g. attribute names), so a cheap
+    // identity scan finds most of them before falling back to equals
+    for (int i = 0; i < smallSize; i++) {
+      if (small[2 * i] == key)
+        return i;
+    }
+
+    if (key != null) {
+      for (int i = 0; i < smallSize; i++) {
+        if (key.equals(small[2 * i]))
+          return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * @requires <tt>!linked /\ 0 <= i < smallSize</tt>
+   * @effects removes the <tt>i</tt>-th entry of the compact representation,
+   *          returning its value
+   */
+  private Object smallRemove(int i) {
+    Object v = small[2 * i + 1];
+    int moved = 2 * (smallSize - i - 1);
+    if (moved > 0)
+      java.lang.System.arraycopy(small, 2 * i + 2, small, 2 * i, moved);
+    smallSize--;
+    small[2 * smallSize] = null;
+    small[2 * smallSize + 1] = null;
+    changes++;
+
+    return v;
+  }
+
+  /**
+   * @requires <tt>!linked</tt>
+   * @effects moves the entries of the compact representation to the linked
+   *          representation (keeping their order)
+   */
+  private void promote() {
+    Object[] a = small;
+    int n = smallSize;
+    small = null;
+    smallSize = 0;
+    linked = true;
+    for (int i = 0; i < n; i++) {
+      put(a[2 * i], a[2 * i + 1]);
+    }
+  }
+
+  /**
+   * @effects removes <tt>e</tt> from the entry list
+   */
+  private void unlink(Entry e) {
+    if (e.before == null)
+      head = e.after;
+    else
+      e.before.after = e.after;
+
+    if (e.after == null)
+      tail = e.before;
+    else
+      e.after.before = e.before;
+
+    e.before = e.after = null;
+    changes++;
+  }
+
+  /**
+   * @effects writes the fields of this, followed by the representation flag,
+   *          the number of entries and then either the keys in order (linked)
+   *          or the keys and values in order (compact)
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeBoolean(linked);
+    if (linked) {
+      out.writeInt(super.size());
+      for (Entry e = head; e != null; e = e.after)
+        out.writeObject(e.key);
+    } else {
+      out.writeInt(smallSize);
+      for (int i = 0; i < 2 * smallSize; i++)
+        out.writeObject(small[i]);
+    }
+  }
+
+  /**
+   * @effects reads the map written by {@link #writeObject(ObjectOutputStream)}
+   *          and rebuilds its entry list or compact representation
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+    in.defaultReadObject();
+    linked = in.readBoolean();
+    int n = in.readInt();
+    if (linked) {
+      for (int i = 0; i < n; i++) {
+        Entry e = (Entry) super.get(in.readObject());
+        if (tail == null) {
+          head = e;
+        } else {
+          tail.after = e;
+          e.before = tail;
+        }
+        tail = e;
+      }
+    } else if (n > 0) {
+      small = new Object[2 * Math.max(n, Math.min(4, smallLimit))];
+      for (int i = 0; i < 2 * n; i++)
+        small[i] = in.readObject();
+      smallSize = n;
+    }
+  }
+
+  /**
+   * @overview A map entry in the doubly-linked entry list. The links are not
+   *           serialized: they are rebuilt from the key order.
+   */
+  private static class Entry implements Map.Entry, Serializable {
+    private final Object key;
+    private Object value;
+    private transient Entry before;
+    private transient Entry after;
+
+    Entry(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public Object getKey() {
+      return key;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public Object setValue(Object value) {
+      Object old = this.value;
+      this.value = value;
+      return old;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry e = (Map.Entry) o;
+      return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+          && (value == null ? e.getValue() == null : value.equals(e
+              .getValue()));
+    }
+
+    public int hashCode() {
+      return (key == null ? 0 : key.hashCode())
+          ^ (value == null ? 0 : value.hashCode());
+    }
+
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /**
+   * @overview A fail-fast list iterator over the entry list.
+   */
+  private class EntryIterator implements ListIterator {
+    private Entry next;
+    private Entry lastReturned;
+    private int nextIndex;
+    private int expectedChanges = changes;
+
+    EntryIterator(int index) {
+      int size = size();
+      if (index < 0 || index > size)
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+            + size);
+
+      // walk from the nearest end
+      if (index < (size >> 1)) {
+        next = head;
+        for (nextIndex = 0; nextIndex < index; nextIndex++)
+          next = next.after;
+      } else {
+        next = null;
+        for (nextIndex = size; nextIndex > index; nextIndex--)
+          next = (next == null) ? tail : next.before;
+      }
+    }
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    public Object next() {
+      checkForComodification();
+      if (next == null)
+        throw new NoSuchElementException();
+      lastReturned = next;
+      next = next.after;
+      nextIndex++;
+      return lastReturned;
+    }
+
+    public boolean hasPrevious() {
+      return nextIndex > 0;
+    }
+
+    public Object previous() {
+      checkForComodification();
+      if (nextIndex == 0)
+        throw new NoSuchElementException();
+      next = (next == null) ? tail : next.before;
+      lastReturned = next;
+      nextIndex--;
+      return lastReturned;
+    }
+
+    public int nextIndex() {
+      return nextIndex;
+    }
+
+    public int previousIndex() {
+      return nextIndex - 1;
+    }
+
+    public void remove() {
+      checkForComodification();
+      if (lastReturned == null)
+        throw new IllegalStateException();
+      if (next == lastReturned)
+        next = lastReturned.after; // after a call to previous()
+      else
+        nextIndex--;
+      ListMap.this.remove(lastReturned.key);
+      lastReturned = null;
+      expectedChanges = changes;
+    }
+
+    public void set(Object o) {
+      throw new UnsupportedOperationException();
+    }
+
+    public void add(Object o) {
+      throw new UnsupportedOperationException();
+    }
+
+    private void checkForComodification() {
+      if (changes != expectedChanges)
+        throw new ConcurrentModificationException();
+    }
+  }
+
+  /**
+   * @overview A fail-fast list iterator over the compact representation.
+   */
+  private class SmallIterator implements ListIterator {
+    private int next;
+    private int lastReturned = -1;
+    private int expectedChanges = changes;
+
+    SmallIterator(int index) {
+      if (index < 0 || index > smallSize)
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+            + smallSize);
+      next = index;
+    }
+
+    public boolean hasNext() {
+      return next < smallSize;
+    }
+
+    public Object next() {
+      checkForComodification();
+      if (next >= smallSize)
+        throw new NoSuchElementException();
+      lastReturned = next++;
+      return new SmallEntry(lastReturned);
+    }
+
+    public boolean hasPrevious() {
+      return next > 0;
+    }
+
+    public Object previous() {
+      checkForComodification();
+      if (next <= 0)
+        throw new NoSuchElementException();
+      lastReturned = --next;
+      return new SmallEntry(lastReturned);
+    }
+
+    public int nextIndex() {
+      return next;
+    }
+
+    public int previousIndex() {
+      return next - 1;
+    }
+
+    public void remove() {
+      checkForComodification();
+      if (lastReturned < 0)
+        throw new IllegalStateException();
+      smallRemove(lastReturned);
+      if (lastReturned < next)
+        next--;
+      lastReturned = -1;
+      expectedChanges = changes;
+    }
+
+    public void set(Object o) {
+      throw new UnsupportedOperationException();
+    }
+
+    public void add(Object o) {
+      throw new UnsupportedOperationException();
+    }
+
+    private void checkForComodification() {
+      if (changes != expectedChanges || linked)
+        throw new ConcurrentModificationException();
+    }
+  }
+
+  /**
+   * @overview A map entry that reads and writes an entry of the compact
+   *           representation.
+   */
+  private class SmallEntry implements Map.Entry {
+    private final int index;
+    private final int expectedChanges = changes;
+
+    SmallEntry(int index) {
+      this.index = index;
+    }
+
+    public Object getKey() {
+      checkForComodification();
+      return small[2 * index];
+    }
+
+    public Object getValue() {
+      checkForComodification();
+      return small[2 * index + 1];
+    }
+
+    public Object setValue(Object value) {
+      checkForComodification();
+      Object old = small[2 * index + 1];
+      small[2 * index + 1] = value;
+      return old;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry e = (Map.Entry) o;
+      Object k = getKey(), v = getValue();
+      return (k == null ? e.getKey() == null : k.equals(e.getKey()))
+          && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+    }
+
+    public int hashCode() {
+      Object k = getKey(), v = getValue();
+      return (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+    }
+
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+
+    private void checkForComodification() {
+      if (changes != expectedChanges || linked)
+        throw new ConcurrentModificationException();
+    }
+  }
+
+  /**
+   * @overview A live list view of the entries of this, each of which is
+   *           presented as one of its elements (e.g. the key or the value).
+   */
+  private abstract class EntryList extends AbstractSequentialList {
+    /**
+     * @effects returns the element of <tt>e</tt> that this list presents
+     */
+    abstract Object element(Map.Entry e);
+
+    /**
+     * @effects sets the element of <tt>e</tt> that this list presents to
+     *          <tt>o</tt>, returning the old element
+     */
+    Object setElement(Map.Entry e, Object o) {
+      throw new UnsupportedOperationException();
+    }
+
+    public int size() {
+      return ListMap.this.size();
+    }
+
+    public void clear() {
+      ListMap.this.clear();
+    }
+
+    public ListIterator listIterator(int index) {
+      final ListIterator it = entryIterator(index);
+      return new ListIterator() {
+        private Map.Entry lastReturned;
+
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        public Object next() {
+          lastReturned = (Map.Entry) it.next();
+          return element(lastReturned);
+        }
+
+        public boolean hasPrevious() {
+          return it.hasPrevious();
+        }
+
+        public Object previous() {
+          lastReturned = (Map.Entry) it.previous();
+          return element(lastReturned);
+        }
+
+        public int nextIndex() {
+          return it.nextIndex();
+        }
+
+        public int previousIndex() {
+          return it.previousIndex();
+        }
+
+        public void remove() {
+          it.remove();
+          lastReturned = null;
+        }
+
+        public void set(Object o) {
+          if (lastReturned == null)
+            throw new IllegalStateException();
+          setElement(lastReturned, o);
+        }
+
+        public void add(Object o) {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
 }
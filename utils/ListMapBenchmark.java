@@ -0,0 +1,82 @@
+package utils;
+
+/**
+ * @overview A benchmark that compares the compact (small-map) representation
+ *           of {@link ListMap} against the linked representation on maps of
+ *           the size of the constructor arguments of a domain object.
+ *
+ *           <p>Usage: <tt>java utils.ListMapBenchmark [maps] [entries]</tt>
+ *           (defaults: 1000000 maps of 7 entries). Run with a heap large
+ *           enough to hold the maps, e.g. <tt>-Xmx2g</tt>.
+ *
+ * @author dmle
+ */
+public class ListMapBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int numMaps = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    int numEntries = (args.length > 1) ? Integer.parseInt(args[1]) : 7;
+
+    String[] keys = new String[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      keys[i] = "attribute" + i;
+    }
+
+    println("ListMap benchmark: " + numMaps + " maps x " + numEntries
+        + " entries");
+
+    for (int round = 1; round <= ROUNDS; round++) {
+      println("round " + round + ":");
+      run("  compact", numMaps, keys, ListMap.SMALL_LIMIT);
+      run("  linked ", numMaps, keys, 0);
+    }
+  }
+
+  private static void run(String label, int numMaps, String[] keys,
+      int smallLimit) {
+    Runtime rt = Runtime.getRuntime();
+    gc();
+    long mem0 = rt.totalMemory() - rt.freeMemory();
+
+    long t0 = java.lang.System.nanoTime();
+    ListMap[] maps = new ListMap[numMaps];
+    for (int m = 0; m < numMaps; m++) {
+      ListMap map = new ListMap(null, smallLimit);
+      for (int k = 0; k < keys.length; k++) {
+        map.put(keys[k], keys[k]);
+      }
+      maps[m] = map;
+    }
+    long t1 = java.lang.System.nanoTime();
+
+    long hits = 0;
+    for (int m = 0; m < numMaps; m++) {
+      ListMap map = maps[m];
+      for (int k = keys.length - 1; k >= 0; k--) {
+        if (map.get(keys[k]) != null)
+          hits++;
+      }
+    }
+    long t2 = java.lang.System.nanoTime();
+
+    gc();
+    long mem1 = rt.totalMemory() - rt.freeMemory();
+
+    println(String.format(
+        "%s build %7.1f ms   get %7.1f ms   %6.1f bytes/map   (%d hits, %d maps)",
+        label, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (mem1 - mem0)
+            / (double) numMaps, hits, maps.length));
+  }
+
+  private static void gc() {
+    for (int i = 0; i < 3; i++) {
+      java.lang.System.gc();
+    }
+  }
+
+  private static void println(String s) {
+    java.lang.System.out.println(s);
+  }
+}
@@ -0,0 +1,115 @@
+package utils;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @overview The shape of a family of {@link ShapedListMap}s, i.e. a name and
+ *           an ordered sequence of distinct keys, each of which is assigned a
+ *           slot (its position in the sequence). The schema is shared by all
+ *           the maps of the same shape (e.g. all attribute maps of a domain
+ *           class), so that each map only needs to store its values.
+ *
+ *           <p>A schema is serialized as its name and keys, and is rebuilt
+ *           (once per stream, so the maps read with it still share it) when
+ *           it is read.
+ *
+ * @attributes
+ *  name    String
+ *  keys    Object[]
+ *
+ * @abstract_properties
+ *  mutable(name)=false /\ mutable(keys)=false /\
+ *  for all i, j. i != j -> keys[i] != keys[j]
+ *
+ * @author dmle
+ */
+public class ListMapSchema implements Serializable {
+  private final String name;
+  private final Object[] keys;
+  /** maps each key to its slot */
+  private final transient Map slots;
+  /** an unmodifiable view of keys */
+  private final transient List keyList;
+
+  /**
+   * @effects <pre>
+   *            if keys contains duplicates
+   *              throws NotPossibleException
+   *            else
+   *              initialise this as ListMapSchema:<name,keys></pre>
+   */
+  public ListMapSchema(String name, Object[] keys) throws NotPossibleException {
+    this.name = name;
+    this.keys = keys.clone();
+    slots = new HashMap(keys.length * 2);
+    for (int i = 0; i < keys.length; i++) {
+      if (slots.put(keys[i], i) != null)
+        throw new NotPossibleException("ListMapSchema: duplicate key "
+            + keys[i]);
+    }
+    keyList = Collections.unmodifiableList(Arrays.asList(this.keys));
+  }
+
+  /**
+   * @effects returns <tt>this.name</tt>
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @effects returns the number of keys of this
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * @effects returns the key at <tt>slot</tt>
+   */
+  public Object getKey(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * @effects if <tt>key</tt> is a key of this returns its slot, else returns
+   *          <tt>-1</tt>
+   */
+  public int slotOf(Object key) {
+    Integer slot = (Integer) slots.get(key);
+    return (slot != null) ? slot : -1;
+  }
+
+  /**
+   * @effects returns an unmodifiable list view of the keys of this, in order
+   */
+  public List keyList() {
+    return keyList;
+  }
+
+  /**
+   * @effects returns a new {@link ShapedListMap} of this shape, whose values
+   *          are all <tt>null</tt>
+   */
+  public ShapedListMap newMap() {
+    return new ShapedListMap(this);
+  }
+
+  /**
+   * @effects returns a new schema of the name and keys read into this, whose
+   *          slot index and key list are rebuilt
+   */
+  private Object readResolve() throws ObjectStreamException {
+    return new ListMapSchema(name, keys);
+  }
+
+  public String toString() {
+    return "ListMapSchema(" + name + ", " + keyList + ")";
+  }
+}
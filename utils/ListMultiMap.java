@@ -0,0 +1,243 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * @overview An ordered multi-map, i.e. a map in which each key is mapped to a
+ *           sequence of values, and the keys are kept in the order that they
+ *           were first added.
+ *
+ *           <p>Unlike {@link ListMap#put(Object, Object, boolean)}, the values
+ *           of a key always have the same representation (a sequence, even if
+ *           it has only one value): each key owns one contiguous value array
+ *           that grows by doubling, so appending a value does not allocate
+ *           (amortised) and grouping a large number of rows by key only
+ *           allocates a few objects per distinct key.
+ *
+ * @attributes
+ *  name      String
+ *  groups    ListMap(Object,Group)
+ *  size      int
+ *
+ * @abstract_properties
+ *  size = sum of the numbers of values of all the keys /\
+ *  for all key in groups. groups[key] is not empty
+ *
+ * @author dmle
+ */
+public class ListMultiMap {
+  /** the initial capacity of the value array of a key */
+  private static final int INITIAL_CAPACITY = 4;
+
+  private String name;
+  /** maps each key to its values */
+  private ListMap groups;
+  /** the total number of values */
+  private int size;
+
+  public ListMultiMap() {
+    this(null);
+  }
+
+  public ListMultiMap(String name) {
+    this.name = name;
+    groups = new ListMap(name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @effects returns the total number of values of this
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @effects returns the number of distinct keys of this
+   */
+  public int keyCount() {
+    return groups.size();
+  }
+
+  public boolean containsKey(Object key) {
+    return groups.containsKey(key);
+  }
+
+  /**
+   * @effects returns the number of values of <tt>key</tt> (<tt>0</tt> if
+   *          <tt>key</tt> is not in this)
+   */
+  public int count(Object key) {
+    Group g = (Group) groups.get(key);
+    return (g != null) ? g.size : 0;
+  }
+
+  /**
+   * @effects appends <tt>value</tt> to the values of <tt>key</tt>
+   */
+  public void put(Object key, Object value) {
+    Group g = group(key, 1);
+    g.values[g.size++] = value;
+    size++;
+  }
+
+  /**
+   * @effects appends the elements of <tt>values</tt> (in order) to the values
+   *          of <tt>key</tt>
+   */
+  public void putAll(Object key, Object[] values) {
+    if (values.length == 0)
+      return;
+    Group g = group(key, values.length);
+    java.lang.System.arraycopy(values, 0, g.values, g.size, values.length);
+    g.size += values.length;
+    size += values.length;
+  }
+
+  /**
+   * @effects appends the elements of <tt>values</tt> (in iteration order) to
+   *          the values of <tt>key</tt>
+   */
+  public void putAll(Object key, Collection values) {
+    if (values.isEmpty())
+      return;
+    Group g = group(key, values.size());
+    for (Iterator it = values.iterator(); it.hasNext();) {
+      g.values[g.size++] = it.next();
+    }
+    size += values.size();
+  }
+
+  /**
+   * @effects returns an unmodifiable, live list view of the values of
+   *          <tt>key</tt> (in the order that they were added), or an empty
+   *          list if <tt>key</tt> is not in this
+   */
+  public List get(Object key) {
+    final Group g = (Group) groups.get(key);
+    if (g == null)
+      return Collections.EMPTY_LIST;
+
+    return new AbstractList() {
+      public Object get(int index) {
+        if (index < 0 || index >= g.size)
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+              + g.size);
+        return g.values[index];
+      }
+
+      public int size() {
+        return g.size;
+      }
+    };
+  }
+
+  /**
+   * @requires <tt>0 <= index < count(key)</tt>
+   * @effects returns the <tt>index</tt>-th value of <tt>key</tt>
+   */
+  public Object get(Object key, int index) {
+    return get(key).get(index);
+  }
+
+  /**
+   * @effects if <tt>key</tt> is in this removes it and returns its values,
+   *          else returns an empty list
+   */
+  public List remove(Object key) {
+    Group g = (Group) groups.remove(key);
+    if (g == null)
+      return Collections.EMPTY_LIST;
+
+    size -= g.size;
+    Object[] values = new Object[g.size];
+    java.lang.System.arraycopy(g.values, 0, values, 0, g.size);
+    return Arrays.asList(values);
+  }
+
+  /**
+   * @effects returns an unmodifiable list view of the keys of this, in the
+   *          order that they were first added
+   */
+  public List keyList() {
+    return Collections.unmodifiableList(groups.keyList());
+  }
+
+  /**
+   * @effects performs <tt>action</tt> on each (key, value) pair of this, in
+   *          the order of the keys and then of the values of each key
+   */
+  public void forEach(BiConsumer action) {
+    for (Iterator it = groups.entrySet().iterator(); it.hasNext();) {
+      Map.Entry e = (Map.Entry) it.next();
+      Object key = e.getKey();
+      Group g = (Group) e.getValue();
+      for (int i = 0; i < g.size; i++) {
+        action.accept(key, g.values[i]);
+      }
+    }
+  }
+
+  public void clear() {
+    groups.clear();
+    size = 0;
+  }
+
+  public String toString() {
+    StringBuffer sb = new StringBuffer("{");
+    for (Iterator it = groups.keyList().iterator(); it.hasNext();) {
+      Object key = it.next();
+      sb.append(key).append("=").append(get(key));
+      if (it.hasNext())
+        sb.append(", ");
+    }
+
+    return sb.append("}").toString();
+  }
+
+  /**
+   * @effects returns the group of <tt>key</tt> (creating it if it does not
+   *          exist), whose value array has room for <tt>extra</tt> more values
+   */
+  private Group group(Object key, int extra) {
+    Group g = (Group) groups.get(key);
+    if (g == null) {
+      g = new Group(Math.max(INITIAL_CAPACITY, extra));
+      groups.put(key, g);
+    } else if (g.size + extra > g.values.length) {
+      int capacity = Math.max(g.values.length * 2, g.size + extra);
+      Object[] a = new Object[capacity];
+      java.lang.System.arraycopy(g.values, 0, a, 0, g.size);
+      g.values = a;
+    }
+
+    return g;
+  }
+
+  /**
+   * @overview The values of a key, stored contiguously in the first
+   *           <tt>size</tt> elements of <tt>values</tt>.
+   */
+  private static class Group {
+    private Object[] values;
+    private int size;
+
+    Group(int capacity) {
+      values = new Object[capacity];
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package utils;
+
+/**
+ * @overview Scans and parses decimal numbers directly from the characters of a
+ *           string, without regular expressions or intermediate strings. Used
+ *           by {@link TextReader}.
+ *
+ *           <p>The syntax is that of TextIO: an integer is
+ *           <tt>[+-]?[0-9]+</tt> and a real number is
+ *           <tt>[+-]?([0-9]+(\.[0-9]*)?|\.[0-9]+)([eE][+-]?[0-9]+)?</tt>.
+ *
+ *           <p>Real numbers are computed exactly with a single floating-point
+ *           multiplication or division when both the digits and the power of
+ *           ten are exactly representable (e.g. at most 15 digits and an
+ *           exponent within 22 for <tt>double</tt>); other numbers are parsed
+ *           by the JDK, so the result is always correctly rounded.
+ *
+ * @author dmle
+ */
+final class NumberParser {
+
+  /** the powers of ten that are exact as double */
+  private static final double[] DOUBLE_POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  /** the powers of ten that are exact as float */
+  private static final float[] FLOAT_POW10 = {
+    1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+  private NumberParser() {
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * @effects returns the end of the integer that starts at <tt>s[pos]</tt>,
+   *          or <tt>-1</tt> if there is none
+   */
+  static int scanInteger(CharSequence s, int pos) {
+    int n = s.length();
+    int i = pos;
+    if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+      i++;
+
+    int digits = i;
+    while (i < n && isDigit(s.charAt(i)))
+      i++;
+
+    return (i > digits) ? i : -1;
+  }
+
+  /**
+   * @effects returns the end of the real number that starts at
+   *          <tt>s[pos]</tt>, or <tt>-1</tt> if there is none
+   */
+  static int scanReal(CharSequence s, int pos) {
+    int n = s.length();
+    int i = pos;
+    if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+      i++;
+
+    int digits = i;
+    while (i < n && isDigit(s.charAt(i)))
+      i++;
+
+    if (i > digits) {
+      // [0-9]+(\.[0-9]*)?
+      if (i < n && s.charAt(i) == '.') {
+        i++;
+        while (i < n && isDigit(s.charAt(i)))
+          i++;
+      }
+    } else {
+      // \.[0-9]+
+      if (i >= n || s.charAt(i) != '.')
+        return -1;
+      int fraction = ++i;
+      while (i < n && isDigit(s.charAt(i)))
+        i++;
+      if (i == fraction)
+        return -1;
+    }
+
+    // the exponent, if it is complete
+    if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      int e = i + 1;
+      if (e < n && (s.charAt(e) == '+' || s.charAt(e) == '-'))
+        e++;
+      int expDigits = e;
+      while (e < n && isDigit(s.charAt(e)))
+        e++;
+      if (e > expDigits)
+        i = e;
+    }
+
+    return i;
+  }
+
+  /**
+   * @requires <tt>s[start..end)</tt> is an integer (see
+   *           {@link #scanInteger(CharSequence, int)})
+   * @effects returns the value of <tt>s[start..end)</tt>; throws
+   *          <tt>NumberFormatException</tt> if it does not fit in a
+   *          <tt>long</tt>
+   */
+  static long parseLong(CharSequence s, int start, int end)
+  throws NumberFormatException {
+    int i = start;
+    boolean negative = false;
+    char c = s.charAt(i);
+    if (c == '+' || c == '-') {
+      negative = (c == '-');
+      i++;
+    }
+
+    // accumulate negatively, so that Long.MIN_VALUE can be represented
+    final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    final long multmin = limit / 10;
+    long result = 0;
+    for (; i < end; i++) {
+      int d = s.charAt(i) - '0';
+      if (result < multmin)
+        throw new NumberFormatException("For input string: \""
+            + s.subSequence(start, end) + "\"");
+      result *= 10;
+      if (result < limit + d)
+        throw new NumberFormatException("For input string: \""
+            + s.subSequence(start, end) + "\"");
+      result -= d;
+    }
+
+    return negative ? result : -result;
+  }
+
+  /**
+   * @requires <tt>s[start..end)</tt> is a real number (see
+   *           {@link #scanReal(CharSequence, int)})
+   * @effects returns the <tt>double</tt> value of <tt>s[start..end)</tt>
+   *          (which may be infinite)
+   */
+  static double parseDouble(CharSequence s, int start, int end) {
+    Decimal d = new Decimal();
+    if (d.parse(s, start, end) && d.mantissa < (1L << 53)) {
+      double m = d.mantissa;
+      int e = d.exponent;
+      double v;
+      if (m == 0)
+        v = 0.0;
+      else if (e >= 0 && e < DOUBLE_POW10.length)
+        v = m * DOUBLE_POW10[e];
+      else if (e < 0 && -e < DOUBLE_POW10.length)
+        v = m / DOUBLE_POW10[-e];
+      else
+        return Double.parseDouble(s.subSequence(start, end).toString());
+      return d.negative ? -v : v;
+    }
+
+    return Double.parseDouble(s.subSequence(start, end).toString());
+  }
+
+  /**
+   * @requires <tt>s[start..end)</tt> is a real number (see
+   *           {@link #scanReal(CharSequence, int)})
+   * @effects returns the <tt>float</tt> value of <tt>s[start..end)</tt>
+   *          (which may be infinite)
+   */
+  static float parseFloat(CharSequence s, int start, int end) {
+    Decimal d = new Decimal();
+    if (d.parse(s, start, end) && d.mantissa < (1L << 24)) {
+      float m = d.mantissa;
+      int e = d.exponent;
+      float v;
+      if (m == 0)
+        v = 0.0f;
+      else if (e >= 0 && e < FLOAT_POW10.length)
+        v = m * FLOAT_POW10[e];
+      else if (e < 0 && -e < FLOAT_POW10.length)
+        v = m / FLOAT_POW10[-e];
+      else
+        return Float.parseFloat(s.subSequence(start, end).toString());
+      return d.negative ? -v : v;
+    }
+
+    return Float.parseFloat(s.subSequence(start, end).toString());
+  }
+
+  /**
+   * @overview A real number as <tt>(-1)^negative * mantissa * 10^exponent</tt>.
+   */
+  private static class Decimal {
+    boolean negative;
+    long mantissa;
+    int exponent;
+
+    /**
+     * @effects parses the real number <tt>s[start..end)</tt> into this;
+     *          returns <tt>false</tt> if its digits do not fit in 18 decimal
+     *          digits or its exponent is too large
+     */
+    boolean parse(CharSequence s, int start, int end) {
+      int i = start;
+      char c = s.charAt(i);
+      if (c == '+' || c == '-') {
+        negative = (c == '-');
+        i++;
+      }
+
+      int digits = 0;
+      for (; i < end && isDigit(c = s.charAt(i)); i++) {
+        if (mantissa == 0 && c == '0')
+          continue;   // leading zeros
+        if (++digits > 18)
+          return false;
+        mantissa = mantissa * 10 + (c - '0');
+      }
+
+      if (i < end && s.charAt(i) == '.') {
+        for (i++; i < end && isDigit(c = s.charAt(i)); i++) {
+          exponent--;
+          if (mantissa == 0 && c == '0')
+            continue;
+          if (++digits > 18)
+            return false;
+          mantissa = mantissa * 10 + (c - '0');
+        }
+      }
+
+      if (i < end) {
+        // the exponent: [eE][+-]?[0-9]+
+        i++;
+        boolean negExp = false;
+        c = s.charAt(i);
+        if (c == '+' || c == '-') {
+          negExp = (c == '-');
+          i++;
+        }
+        int exp = 0;
+        for (; i < end; i++) {
+          exp = exp * 10 + (s.charAt(i) - '0');
+          if (exp > 1000)
+            return false;
+        }
+        exponent += negExp ? -exp : exp;
+      }
+
+      return true;
+    }
+  }
+}
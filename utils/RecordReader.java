@@ -0,0 +1,464 @@
+package utils;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+import utils.db.ConstructorMatch;
+import utils.db.ToolKit;
+import utils.fileio.ChunkParser;
+import utils.fileio.FileHandler;
+
+/**
+ * @overview Reads the rows of a delimited text file (e.g. CSV) as objects of a
+ *           domain class. The columns of a row are named by attribute names,
+ *           and are passed to the constructor of the class whose parameters
+ *           are annotated with {@link AttrRef} of the same names (found by
+ *           {@link ToolKit#matchConstructor(Class, boolean, Object[], Class[])}).
+ *
+ *           <p>Each field is parsed according to the type of its parameter:
+ *           <tt>int, long, short, byte, double, float, boolean, char</tt>
+ *           (or their wrapper classes) and <tt>String</tt>. Numbers are
+ *           parsed directly from the bytes of the file, with the syntax of
+ *           TextIO (see {@link NumberParser}); booleans accept the words of
+ *           <tt>TextIO.getBoolean</tt>. Only string fields are decoded (in
+ *           the charset of the reader).
+ *
+ *           <p>Fields are trimmed of surrounding whitespace and are not
+ *           quoted, so they can not contain the delimiter. Blank lines are
+ *           skipped. An empty field is read as <tt>null</tt> for a wrapper
+ *           class and as <tt>""</tt> for a string.
+ *
+ *           <p>Objects are created through a method handle of the constructor
+ *           that is looked up once, so that reading a large file costs little
+ *           more than parsing it. A RecordReader is immutable and so can parse
+ *           the chunks of a file in parallel ({@link #readParallel(String)}).
+ *
+ * @example
+ *  <pre>
+ *  RecordReader&lt;Car&gt; reader = new RecordReader&lt;&gt;(Car.class, ',',
+ *      "name", "width", "height", "length", "weight", "seatingCapacity",
+ *      "registrationNumber");
+ *  List&lt;Car&gt; cars = reader.read("cars.csv");
+ *  </pre>
+ *
+ * @attributes
+ *  cls         Class
+ *  delimiter   char
+ *  charset     Charset
+ *  columns     String[]
+ *
+ * @author dmle
+ */
+public class RecordReader<T> implements ChunkParser<List<T>> {
+  /** the types of the fields */
+  private static final int INT = 0;
+  private static final int LONG = 1;
+  private static final int SHORT = 2;
+  private static final int BYTE = 3;
+  private static final int DOUBLE = 4;
+  private static final int FLOAT = 5;
+  private static final int BOOLEAN = 6;
+  private static final int CHAR = 7;
+  private static final int STRING = 8;
+
+  private final Class<T> cls;
+  private final byte delimiter;
+  private final Charset charset;
+  private final String[] columns;
+
+  /** the type of each column, and whether its parameter is of a primitive type */
+  private final int[] types;
+  private final boolean[] primitive;
+
+  /** the constructor, taking an array of the values of the columns */
+  private final MethodHandle constructor;
+
+  /**
+   * @effects initialise this to read rows of <tt>columns</tt>, separated by
+   *          <tt>delimiter</tt> and encoded in UTF-8, as objects of
+   *          <tt>cls</tt>; throws NotPossibleException if <tt>cls</tt> has no
+   *          suitable constructor
+   */
+  public RecordReader(Class<T> cls, char delimiter, String... columns)
+      throws NotPossibleException {
+    this(cls, delimiter, StandardCharsets.UTF_8, columns);
+  }
+
+  /**
+   * @requires <tt>delimiter</tt> is an ASCII character /\ <tt>charset</tt>
+   *           encodes ASCII characters as single bytes
+   * @effects initialise this to read rows of <tt>columns</tt>, separated by
+   *          <tt>delimiter</tt> and encoded in <tt>charset</tt>, as objects
+   *          of <tt>cls</tt>; throws NotPossibleException if <tt>cls</tt> has
+   *          no public constructor whose parameters are all annotated with
+   *          {@link AttrRef} of the names <tt>columns</tt> and are of
+   *          supported types
+   */
+  public RecordReader(Class<T> cls, char delimiter, Charset charset,
+      String... columns) throws NotPossibleException {
+    if (delimiter >= 0x80 || delimiter == '\n')
+      throw new NotPossibleException("RecordReader: invalid delimiter '"
+          + delimiter + "'");
+
+    this.cls = cls;
+    this.delimiter = (byte) delimiter;
+    this.charset = charset;
+    this.columns = columns.clone();
+
+    ConstructorMatch m = ToolKit.matchConstructor(cls, false, this.columns,
+        columnTypes(cls, this.columns));
+    if (m == null)
+      throw new NotPossibleException("RecordReader: " + cls.getName()
+          + " has no constructor with @AttrRef parameters "
+          + Arrays.toString(columns));
+
+    // the parameter types in the order of the columns
+    Constructor c = m.getConstructor();
+    Class[] paramTypes = c.getParameterTypes();
+    Class[] colTypes = new Class[paramTypes.length];
+    int[] reorder = new int[paramTypes.length];
+    for (int k = 0; k < paramTypes.length; k++) {
+      reorder[k] = m.getBinding(k);
+      colTypes[reorder[k]] = paramTypes[k];
+    }
+
+    types = new int[colTypes.length];
+    primitive = new boolean[colTypes.length];
+    for (int i = 0; i < colTypes.length; i++) {
+      types[i] = typeOf(colTypes[i]);
+      primitive[i] = colTypes[i].isPrimitive();
+      if (types[i] < 0)
+        throw new NotPossibleException("RecordReader: unsupported type "
+            + colTypes[i].getName() + " of column " + columns[i]);
+    }
+
+    try {
+      MethodHandle h = MethodHandles.publicLookup().unreflectConstructor(c);
+      h = MethodHandles.permuteArguments(h,
+          MethodType.methodType(h.type().returnType(), colTypes), reorder);
+      constructor = h.asType(h.type().generic()).asSpreader(Object[].class,
+          colTypes.length);
+    } catch (IllegalAccessException e) {
+      throw new NotPossibleException("RecordReader: can not access " + c);
+    }
+  }
+
+  public Class<T> getRecordClass() {
+    return cls;
+  }
+
+  public String[] getColumns() {
+    return columns.clone();
+  }
+
+  /**
+   * @effects <pre>
+   *     if failed to read the file at <tt>path</tt>
+   *      throws NotPossibleException
+   *     else if a row is invalid or its object can not be created
+   *      throws NotPossibleException
+   *     else
+   *      returns the objects of the rows of the file, in file order
+   *      </pre>
+   *      The file is mapped into memory, so it must be smaller than 2GB (see
+   *      {@link #readParallel(String)} for larger files).
+   */
+  public List<T> read(String path) throws NotPossibleException {
+    return parse(FileHandler.mapFile(path));
+  }
+
+  /**
+   * @effects same as {@link #read(String)}, but the file is split into
+   *          chunks of whole lines that are parsed in parallel (see
+   *          {@link FileHandler#processParallel(String, ChunkParser,
+   *          BinaryOperator)}). The objects are returned in file order.
+   */
+  public List<T> readParallel(String path) throws NotPossibleException {
+    return FileHandler.processParallel(path, this, new BinaryOperator<List<T>>() {
+      public List<T> apply(List<T> left, List<T> right) {
+        left.addAll(right);
+        return left;
+      }
+    });
+  }
+
+  /**
+   * @requires the remaining bytes of <tt>chunk</tt> are a sequence of whole
+   *           rows
+   * @effects returns the objects of the rows in <tt>chunk</tt>, in order;
+   *          throws NotPossibleException if a row is invalid or its object
+   *          can not be created
+   */
+  public List<T> parse(ByteBuffer chunk) throws NotPossibleException {
+    List<T> records = new ArrayList<>();
+    Field field = new Field(chunk);
+    Object[] values = new Object[types.length];
+
+    int end = chunk.limit();
+    int pos = chunk.position();
+    while (pos < end) {
+      int lineEnd = pos;
+      while (lineEnd < end && chunk.get(lineEnd) != '\n')
+        lineEnd++;
+      if (!isBlank(chunk, pos, lineEnd))
+        records.add(parseRow(chunk, pos, lineEnd, field, values));
+      pos = lineEnd + 1;
+    }
+
+    return records;
+  }
+
+  /**
+   * @effects returns the object of the row <tt>chunk[start..end)</tt>
+   */
+  private T parseRow(ByteBuffer chunk, int start, int end, Field field,
+      Object[] values) throws NotPossibleException {
+    int pos = start;
+    for (int col = 0; col < types.length; col++) {
+      int fieldEnd = pos;
+      while (fieldEnd < end && chunk.get(fieldEnd) != delimiter)
+        fieldEnd++;
+      if (fieldEnd == end && col < types.length - 1)
+        throw rowError(chunk, start, end, "expected " + types.length
+            + " columns");
+
+      field.set(pos, fieldEnd);
+      try {
+        values[col] = parseField(field, col);
+      } catch (NumberFormatException e) {
+        throw rowError(chunk, start, end, "invalid " + columns[col] + " \""
+            + field + "\"");
+      }
+      pos = fieldEnd + 1;
+    }
+    if (pos <= end)
+      throw rowError(chunk, start, end, "expected " + types.length
+          + " columns");
+
+    try {
+      return cls.cast((Object) constructor.invokeExact(values));
+    } catch (Throwable e) {
+      throw rowError(chunk, start, end, "failed to create "
+          + cls.getSimpleName() + ": " + e);
+    }
+  }
+
+  /**
+   * @effects returns the value of <tt>field</tt> as the type of column
+   *          <tt>col</tt>; throws NumberFormatException if it is invalid
+   */
+  private Object parseField(Field field, int col) throws NumberFormatException {
+    int type = types[col];
+    int n = field.length();
+    if (n == 0 && type != CHAR) {
+      if (type == STRING)
+        return "";
+      if (!primitive[col])
+        return null;
+      throw new NumberFormatException();
+    }
+
+    switch (type) {
+    case INT:
+    case LONG:
+    case SHORT:
+    case BYTE:
+      if (NumberParser.scanInteger(field, 0) != n)
+        throw new NumberFormatException();
+      long x = NumberParser.parseLong(field, 0, n);
+      if (type == LONG)
+        return x;
+      if (type == INT && x == (int) x)
+        return (int) x;
+      if (type == SHORT && x == (short) x)
+        return (short) x;
+      if (type == BYTE && x == (byte) x)
+        return (byte) x;
+      throw new NumberFormatException();
+    case DOUBLE:
+    case FLOAT:
+      if (NumberParser.scanReal(field, 0) != n)
+        throw new NumberFormatException();
+      if (type == DOUBLE) {
+        double d = NumberParser.parseDouble(field, 0, n);
+        if (Double.isInfinite(d))
+          throw new NumberFormatException();
+        return d;
+      }
+      float f = NumberParser.parseFloat(field, 0, n);
+      if (Float.isInfinite(f))
+        throw new NumberFormatException();
+      return f;
+    case BOOLEAN:
+      String s = field.toString();
+      if (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("t")
+          || s.equalsIgnoreCase("yes") || s.equalsIgnoreCase("y")
+          || s.equals("1"))
+        return Boolean.TRUE;
+      if (s.equalsIgnoreCase("false") || s.equalsIgnoreCase("f")
+          || s.equalsIgnoreCase("no") || s.equalsIgnoreCase("n")
+          || s.equals("0"))
+        return Boolean.FALSE;
+      throw new NumberFormatException();
+    case CHAR:
+      String c = field.decode(charset);
+      if (c.length() != 1)
+        throw new NumberFormatException();
+      return c.charAt(0);
+    default:
+      return field.decode(charset);
+    }
+  }
+
+  private NotPossibleException rowError(ByteBuffer chunk, int start, int end,
+      String message) {
+    Field row = new Field(chunk);
+    row.set(start, end);
+    return new NotPossibleException("RecordReader: " + message + " in row \""
+        + row.decode(charset) + "\"");
+  }
+
+  private static boolean isBlank(ByteBuffer chunk, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if ((chunk.get(i) & 0xff) > ' ')
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @effects returns the type of the column of each name in
+   *          <tt>columns</tt>, as declared by the first public constructor of
+   *          <tt>cls</tt> whose parameters are all annotated with
+   *          {@link AttrRef} of these names, or <tt>null</tt> types if there
+   *          is none
+   */
+  private static Class[] columnTypes(Class cls, String[] columns) {
+    Set<String> names = new HashSet<>(Arrays.asList(columns));
+    Class[] colTypes = new Class[columns.length];
+
+    for (Constructor c : cls.getConstructors()) {
+      Class[] paramTypes = c.getParameterTypes();
+      if (paramTypes.length != columns.length)
+        continue;
+
+      Annotation[][] annotations = c.getParameterAnnotations();
+      String[] refs = new String[paramTypes.length];
+      for (int k = 0; k < paramTypes.length; k++) {
+        for (Annotation a : annotations[k]) {
+          if (a instanceof AttrRef)
+            refs[k] = ((AttrRef) a).value();
+        }
+      }
+      if (!names.equals(new HashSet<>(Arrays.asList(refs))))
+        continue;
+
+      for (int i = 0; i < columns.length; i++) {
+        for (int k = 0; k < refs.length; k++) {
+          if (columns[i].equals(refs[k]))
+            colTypes[i] = paramTypes[k];
+        }
+      }
+      return colTypes;
+    }
+
+    return colTypes;
+  }
+
+  /**
+   * @effects returns the field type of values of <tt>type</tt>, or
+   *          <tt>-1</tt> if it is not supported
+   */
+  private static int typeOf(Class type) {
+    if (type == int.class || type == Integer.class)
+      return INT;
+    if (type == long.class || type == Long.class)
+      return LONG;
+    if (type == short.class || type == Short.class)
+      return SHORT;
+    if (type == byte.class || type == Byte.class)
+      return BYTE;
+    if (type == double.class || type == Double.class)
+      return DOUBLE;
+    if (type == float.class || type == Float.class)
+      return FLOAT;
+    if (type == boolean.class || type == Boolean.class)
+      return BOOLEAN;
+    if (type == char.class || type == Character.class)
+      return CHAR;
+    if (type == String.class)
+      return STRING;
+    return -1;
+  }
+
+  public String toString() {
+    return "RecordReader(" + cls.getName() + ", "
+        + Arrays.toString(columns) + ")";
+  }
+
+  /**
+   * @overview A field of a row, i.e. the bytes <tt>chunk[start..end)</tt>
+   *           without surrounding whitespace, viewed as ASCII characters so
+   *           that numbers can be parsed without copying them.
+   */
+  private static class Field implements CharSequence {
+    private final ByteBuffer chunk;
+    private int start;
+    private int end;
+
+    Field(ByteBuffer chunk) {
+      this.chunk = chunk;
+    }
+
+    void set(int start, int end) {
+      while (start < end && (chunk.get(start) & 0xff) <= ' ')
+        start++;
+      while (end > start && (chunk.get(end - 1) & 0xff) <= ' ')
+        end--;
+      this.start = start;
+      this.end = end;
+    }
+
+    public int length() {
+      return end - start;
+    }
+
+    public char charAt(int index) {
+      return (char) (chunk.get(start + index) & 0xff);
+    }
+
+    public CharSequence subSequence(int from, int to) {
+      Field f = new Field(chunk);
+      f.start = start + from;
+      f.end = start + to;
+      return f;
+    }
+
+    /**
+     * @effects returns the bytes of this decoded in <tt>charset</tt>
+     */
+    String decode(Charset charset) {
+      byte[] bytes = new byte[end - start];
+      ByteBuffer src = chunk.duplicate();
+      src.limit(end).position(start);
+      src.get(bytes);
+      return new String(bytes, charset);
+    }
+
+    public String toString() {
+      return decode(StandardCharsets.ISO_8859_1);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * @overview A {@link ListMap} whose keys are fixed by a shared
+ *           {@link ListMapSchema}. The key order, the key-to-slot index and
+ *           the name are held by the schema, and each map only holds an
+ *           <tt>Object[]</tt> of values (one per slot), so that a large number
+ *           of maps of the same shape (e.g. attribute maps of a domain class)
+ *           take a fraction of the memory of ordinary <tt>ListMap</tt>s, and
+ *           a value is looked up by an array index.
+ *
+ *           <p>A shaped map always contains all the keys of its schema (a key
+ *           whose value has not been set is mapped to <tt>null</tt>). Thus
+ *           <tt>put</tt> only accepts the keys of the schema, and the
+ *           operations that would remove keys (<tt>remove</tt>,
+ *           <tt>removeFirst</tt>, <tt>removeLast</tt>, <tt>clear</tt>) are not
+ *           supported.
+ *
+ * @author dmle
+ */
+public class ShapedListMap extends ListMap {
+  private final ListMapSchema schema;
+  private final Object[] vals;
+
+  /**
+   * @effects initialise this as a map of the shape <tt>schema</tt>, whose
+   *          values are all <tt>null</tt>
+   */
+  public ShapedListMap(ListMapSchema schema) {
+    super(null);
+    this.schema = schema;
+    vals = new Object[schema.size()];
+  }
+
+  /**
+   * @effects returns <tt>this.schema</tt>
+   */
+  public ListMapSchema getSchema() {
+    return schema;
+  }
+
+  public String getName() {
+    return schema.getName();
+  }
+
+  public int size() {
+    return vals.length;
+  }
+
+  public boolean isEmpty() {
+    return vals.length == 0;
+  }
+
+  public boolean containsKey(Object key) {
+    return schema.slotOf(key) >= 0;
+  }
+
+  public boolean containsValue(Object value) {
+    for (int i = 0; i < vals.length; i++) {
+      if (value == null ? vals[i] == null : value.equals(vals[i]))
+        return true;
+    }
+
+    return false;
+  }
+
+  public Object get(Object key) {
+    int slot = schema.slotOf(key);
+    return (slot >= 0) ? vals[slot] : null;
+  }
+
+  /**
+   * @effects returns the value at <tt>slot</tt>
+   */
+  public Object get(int slot) {
+    return vals[slot];
+  }
+
+  /**
+   * @effects sets the value at <tt>slot</tt> to <tt>value</tt>, returning
+   *          the old value
+   */
+  public Object set(int slot, Object value) {
+    Object old = vals[slot];
+    vals[slot] = value;
+    return old;
+  }
+
+  /**
+   * @effects <pre>
+   *            if key is not a key of this.schema
+   *              throws NotPossibleException
+   *            else
+   *              sets the value of key to value, returning the old value</pre>
+   */
+  public Object put(Object key, Object value) throws NotPossibleException {
+    int slot = schema.slotOf(key);
+    if (slot < 0)
+      throw new NotPossibleException("ShapedListMap.put: key " + key
+          + " is not in the schema " + schema.getName());
+
+    return set(slot, value);
+  }
+
+  public Object remove(Object key) {
+    throw new UnsupportedOperationException(
+        "ShapedListMap.remove: the keys of a shaped map are fixed");
+  }
+
+  public Object removeFirst() {
+    throw new UnsupportedOperationException(
+        "ShapedListMap.removeFirst: the keys of a shaped map are fixed");
+  }
+
+  public Object removeLast() {
+    throw new UnsupportedOperationException(
+        "ShapedListMap.removeLast: the keys of a shaped map are fixed");
+  }
+
+  public void clear() {
+    throw new UnsupportedOperationException(
+        "ShapedListMap.clear: the keys of a shaped map are fixed");
+  }
+
+  /**
+   * @effects returns the (shared, unmodifiable) key list of
+   *          <tt>this.schema</tt>
+   */
+  public List keyList() {
+    return schema.keyList();
+  }
+
+  /**
+   * @effects returns a live, fixed-size {@link List} view of the values of
+   *          this that supports <tt>set</tt>
+   */
+  public Collection values() {
+    return new AbstractList() {
+      public Object get(int index) {
+        return vals[index];
+      }
+
+      public Object set(int index, Object element) {
+        return ShapedListMap.this.set(index, element);
+      }
+
+      public int size() {
+        return vals.length;
+      }
+    };
+  }
+
+  public Object clone() {
+    ShapedListMap m = new ShapedListMap(schema);
+    java.lang.System.arraycopy(vals, 0, m.vals, 0, vals.length);
+    return m;
+  }
+
+  protected ListIterator entryIterator(final int index) {
+    if (index < 0 || index > vals.length)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+          + vals.length);
+
+    return new ListIterator() {
+      private int next = index;
+
+      public boolean hasNext() {
+        return next < vals.length;
+      }
+
+      public Object next() {
+        if (next >= vals.length)
+          throw new NoSuchElementException();
+        return new SlotEntry(next++);
+      }
+
+      public boolean hasPrevious() {
+        return next > 0;
+      }
+
+      public Object previous() {
+        if (next <= 0)
+          throw new NoSuchElementException();
+        return new SlotEntry(--next);
+      }
+
+      public int nextIndex() {
+        return next;
+      }
+
+      public int previousIndex() {
+        return next - 1;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "ShapedListMap: the keys of a shaped map are fixed");
+      }
+
+      public void set(Object o) {
+        throw new UnsupportedOperationException();
+      }
+
+      public void add(Object o) {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * @overview A map entry that reads and writes a slot of this map.
+   */
+  private class SlotEntry implements Map.Entry {
+    private final int slot;
+
+    SlotEntry(int slot) {
+      this.slot = slot;
+    }
+
+    public Object getKey() {
+      return schema.getKey(slot);
+    }
+
+    public Object getValue() {
+      return vals[slot];
+    }
+
+    public Object setValue(Object value) {
+      return set(slot, value);
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry e = (Map.Entry) o;
+      Object k = getKey(), v = getValue();
+      return (k == null ? e.getKey() == null : k.equals(e.getKey()))
+          && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+    }
+
+    public int hashCode() {
+      Object k = getKey(), v = getValue();
+      return (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+    }
+
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
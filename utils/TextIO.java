@@ -1,20 +1,9 @@
 package utils; 
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
-import java.util.IllegalFormatException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.swing.JFileChooser;
-import javax.swing.JOptionPane;
 
 /**
  * TextIO provides a set of static methods for reading and writing text.  By default, it reads
@@ -38,6 +27,10 @@ import javax.swing.JOptionPane;
  * this version should work with any source code that used the previous version, but it has some new
  * features, including the type of formatted output that was introduced in Java 5 and the ability to
  * use files and streams.)
+ * <p>The static methods of TextIO delegate to a default TextReader and TextWriter, which
+ * can be obtained with getReader() and getWriter().  To read or write several sources or
+ * destinations at the same time (e.g. to parse many files concurrently on separate threads),
+ * create separate TextReader and TextWriter objects.
  */
 public class TextIO {
 
@@ -65,18 +58,7 @@ public class TextIO {
     * or stream is closed.
     */
    public static void readStandardInput() {
-      if (readingStandardInput)
-         return;
-      try {
-         in.close();
-      }
-      catch (Exception e) {
-      }
-      emptyBuffer();  // Added November 2007
-      in = standardInput;
-      inputFileName = null;
-      readingStandardInput = true;
-      inputErrorCount = 0;
+      reader.readStandardInput();
    }
    
    /**
@@ -86,10 +68,7 @@ public class TextIO {
     * standard input stream.
     */
    public static void readStream(InputStream inputStream) {
-      if (inputStream == null)
-         readStandardInput();
-      else
-         readStream(new InputStreamReader(inputStream));
+      reader.readStream(inputStream);
    }
    
    /**
@@ -99,18 +78,7 @@ public class TextIO {
     * standard input stream.
     */
    public static void readStream(Reader inputStream) {
-      if (inputStream == null)
-         readStandardInput();
-      else {
-         if ( inputStream instanceof BufferedReader)
-            in = (BufferedReader)inputStream;
-         else
-            in = new BufferedReader(inputStream);
-         emptyBuffer();  // Added November 2007
-         inputFileName = null;
-         readingStandardInput = false;
-         inputErrorCount = 0;
-      }
+      reader.readStream(inputStream);
    }
    
    /**
@@ -123,30 +91,7 @@ public class TextIO {
     * from the file, instead of from standard input.
     */
    public static void readFile(String fileName) {
-      if (fileName == null) // Go back to reading standard input
-         readStandardInput();
-      else {
-         BufferedReader newin;
-         try {
-            newin = new BufferedReader( new FileReader(fileName) );
-         }
-         catch (Exception e) {
-            throw new IllegalArgumentException("Can't open file \"" + fileName + "\" for input.\n"
-                           + "(Error :" + e + ")");
-         }
-         if (! readingStandardInput) { // close current input stream
-            try {
-               in.close();
-            }
-            catch (Exception e) {
-            }
-         }
-         emptyBuffer();  // Added November 2007
-         in = newin;
-         readingStandardInput = false;
-         inputErrorCount = 0;
-         inputFileName = fileName;
-      }
+      reader.readFile(fileName);
    }
 
    /**
@@ -165,34 +110,7 @@ public class TextIO {
     * routine to shut down the Java virtual machine completely.
     */
    public static boolean readUserSelectedFile() {
-      if (fileDialog == null)
-         fileDialog = new JFileChooser();
-      fileDialog.setDialogTitle("Select File for Input");
-      int option = fileDialog.showOpenDialog(null);
-      if (option != JFileChooser.APPROVE_OPTION)
-         return false;
-      File selectedFile = fileDialog.getSelectedFile();
-      BufferedReader newin;
-      try {
-         newin = new BufferedReader( new FileReader(selectedFile) );
-      }
-      catch (Exception e) {
-         throw new IllegalArgumentException("Can't open file \"" + selectedFile.getName() + "\" for input.\n"
-                        + "(Error :" + e + ")");
-      }
-      if (!readingStandardInput) { // close current file
-         try {
-            in.close();
-         }
-         catch (Exception e) {
-         }
-      }
-      emptyBuffer();  // Added November 2007
-      in = newin;
-      inputFileName = selectedFile.getName();
-      readingStandardInput = false;
-      inputErrorCount = 0;
-      return true;
+      return TextIOFileDialogs.readUserSelectedFile(reader);
    }
    
    /**
@@ -201,17 +119,7 @@ public class TextIO {
     * will be closed.
     */
    public static void writeStandardOutput() {
-      if (writingStandardOutput)
-         return;
-      try {
-         out.close();
-      }
-      catch (Exception e) {
-      }
-      outputFileName = null;
-      outputErrorCount = 0;
-      out = standardOutput;
-      writingStandardOutput = true;
+      writer.writeStandardOutput();
    }
    
 
@@ -222,10 +130,7 @@ public class TextIO {
     * standard output stream.
     */
    public static void writeStream(OutputStream outputStream) {
-      if (outputStream == null)
-         writeStandardOutput();
-      else
-         writeStream(new PrintWriter(outputStream));
+      writer.writeStream(outputStream);
    }
    
    /**
@@ -235,14 +140,7 @@ public class TextIO {
     * standard output stream.
     */
    public static void writeStream(PrintWriter outputStream) {
-      if (outputStream == null)
-         writeStandardOutput();
-      else {
-         out = outputStream;
-         outputFileName = null;
-         outputErrorCount = 0;
-         writingStandardOutput = false;
-      }
+      writer.writeStream(outputStream);
    }
    
 
@@ -260,29 +158,7 @@ public class TextIO {
     * routine to shut down the Java virtual machine completely.
     */
    public static void writeFile(String fileName) {
-      if (fileName == null)  // Go back to reading standard output
-         writeStandardOutput();
-      else {
-         PrintWriter newout;
-         try {
-            newout = new PrintWriter(new FileWriter(fileName));
-         }
-         catch (Exception e) {
-            throw new IllegalArgumentException("Can't open file \"" + fileName + "\" for output.\n"
-                           + "(Error :" + e + ")");
-         }
-         if (!writingStandardOutput) {
-            try {
-               out.close();
-            }
-            catch (Exception e) {
-            }
-         }
-         out = newout;
-         writingStandardOutput = false;
-         outputFileName = fileName;
-         outputErrorCount = 0;
-      }
+      writer.writeFile(fileName);
    }
    
    /**
@@ -297,47 +173,7 @@ public class TextIO {
     * output destination is not changed.
     */
    public static boolean writeUserSelectedFile() {
-      if (fileDialog == null)
-         fileDialog = new JFileChooser();
-      fileDialog.setDialogTitle("Select File for Output");
-      File selectedFile;
-      while (true) {
-         int option = fileDialog.showSaveDialog(null);
-         if (option != JFileChooser.APPROVE_OPTION)
-            return false;  // user canceled
-         selectedFile = fileDialog.getSelectedFile();
-         if (selectedFile.exists()) {
-            int response = JOptionPane.showConfirmDialog(null,
-                  "The file \"" + selectedFile.getName() + "\" already exists.  Do you want to replace it?",
-                  "Replace existing file?",
-                  JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
-            if (response == JOptionPane.YES_OPTION)
-               break;
-         }
-         else {
-            break;
-         }
-      }
-      PrintWriter newout;
-      try {
-         newout = new PrintWriter(new FileWriter(selectedFile));
-      }
-      catch (Exception e) {
-         throw new IllegalArgumentException("Can't open file \"" + selectedFile.getName() + "\" for output.\n"
-                        + "(Error :" + e + ")");
-      }
-      if (!writingStandardOutput) {
-         try {
-            out.close();
-         }
-         catch (Exception e) {
-         }
-      }
-      out = newout;
-      writingStandardOutput = false;
-      outputFileName = selectedFile.getName();
-      outputErrorCount = 0;
-      return true;
+      return TextIOFileDialogs.writeUserSelectedFile(writer);
    }
    
 
@@ -346,7 +182,7 @@ public class TextIO {
     * If the class is reading from standard input or from a stream, then the return value is null.
     */
    public static String getInputFileName() {
-      return inputFileName;
+      return reader.getInputFileName();
    }
    
 
@@ -355,7 +191,7 @@ public class TextIO {
     * If the class is writing to standard output or to a stream, then the return value is null.
     */
    public static String getOutputFileName() {
-      return outputFileName;
+      return writer.getOutputFileName();
    }
    
 
@@ -366,13 +202,52 @@ public class TextIO {
     * and no extra spaces.  This method will handle any type of parameter, even one
     * whose type is one of the primitive types.
     */
-   public static void put(Object x) { 
-      out.print(x); 
-      out.flush();
-      if (out.checkError())
-         outputError("Error while writing output.");
+   public static void put(Object x) {
+      writer.put(x);
    }
    
+   /**
+    * Write an int to the current output destination, without boxing it.
+    */
+   public static void put(int x) {
+      writer.put(x);
+   }
+
+   /**
+    * Write a long to the current output destination, without boxing it.
+    */
+   public static void put(long x) {
+      writer.put(x);
+   }
+
+   /**
+    * Write a float to the current output destination, without boxing it.
+    */
+   public static void put(float x) {
+      writer.put(x);
+   }
+
+   /**
+    * Write a double to the current output destination, without boxing it.
+    */
+   public static void put(double x) {
+      writer.put(x);
+   }
+
+   /**
+    * Write a char to the current output destination, without boxing it.
+    */
+   public static void put(char x) {
+      writer.put(x);
+   }
+
+   /**
+    * Write a boolean to the current output destination, without boxing it.
+    */
+   public static void put(boolean x) {
+      writer.put(x);
+   }
+
    /**
     * Write a single value to the current output destination, using the default format
     * and outputting at least minChars characters (with extra spaces added before the
@@ -384,45 +259,71 @@ public class TextIO {
     * the total up to minChars.  If minChars is less than or equal to zero, then x will be printed
     * in the minumum number of spaces possible.
     */
-   public static void put(Object x, int minChars)  { 
-      if (minChars <= 0)
-         out.print(x);
-      else
-         out.printf("%" + minChars + "s", x);
-      out.flush();
-      if (out.checkError())
-         outputError("Error while writing output.");
+   public static void put(Object x, int minChars) {
+      writer.put(x, minChars);
    }
       
    /**
     * This is equivalent to put(x), followed by an end-of-line.
     */
-   public static void putln(Object x) { 
-      out.println(x);
-      out.flush();
-      if (out.checkError())
-         outputError("Error while writing output.");
+   public static void putln(Object x) {
+      writer.putln(x);
    }
    
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for an int.
+    */
+   public static void putln(int x) {
+      writer.putln(x);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a long.
+    */
+   public static void putln(long x) {
+      writer.putln(x);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a float.
+    */
+   public static void putln(float x) {
+      writer.putln(x);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a double.
+    */
+   public static void putln(double x) {
+      writer.putln(x);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a char.
+    */
+   public static void putln(char x) {
+      writer.putln(x);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a boolean.
+    */
+   public static void putln(boolean x) {
+      writer.putln(x);
+   }
+
    /**
     * This is equivalent to put(x,minChars), followed by an end-of-line.
     */
    public static void putln(Object x, int minChars) {
-      put(x,minChars);
-      out.println();
-      out.flush();
-      if (out.checkError())
-         outputError("Error while writing output.");
+      writer.putln(x, minChars);
    }
 
    /**
     * Write an end-of-line character to the current output destination.
     */
    public static void putln() {
-      out.println();
-      out.flush();
-      if (out.checkError())
-         outputError("Error while writing output.");
+      writer.putln();
    }
    
    /**
@@ -435,17 +336,23 @@ public class TextIO {
     * output.
     */
    public static void putf(String format, Object... items) {
-      if (format == null)
-         throw new IllegalArgumentException("Null format string in TextIO.putf() method.");
-      try {
-         out.printf(format,items);
-      }
-      catch (IllegalFormatException e) {
-         throw new IllegalArgumentException("Illegal format string in TextIO.putf() method.");
-      }
-      out.flush();
-      if (out.checkError())
-         outputError("Error while writing output.");
+      writer.putf(format, items);
+   }
+
+   /**
+    * Passes any buffered output to the current output destination and flushes it.  This is
+    * only needed if the flush policy has been changed from TextWriter.FlushPolicy.EVERY_CALL.
+    */
+   public static void flush() {
+      writer.flush();
+   }
+
+   /**
+    * Sets when output is flushed to the current output destination; see TextWriter.FlushPolicy.
+    * With any policy other than EVERY_CALL, flush() must be called before the program ends.
+    */
+   public static void setFlushPolicy(TextWriter.FlushPolicy policy) {
+      writer.setFlushPolicy(policy);
    }
    
    // *************************** Input Methods *********************************
@@ -455,8 +362,8 @@ public class TextIO {
     * this method does NOT skip whitespace before testing for end-of-line -- if you want to do
     * that, call skipBlanks() first.
     */
-   public static boolean eoln() { 
-      return peek() == '\n'; 
+   public static boolean eoln() {
+      return reader.eoln();
    }
 
    /**
@@ -464,8 +371,8 @@ public class TextIO {
     * this method does NOT skip whitespace before testing for end-of-line -- if you want to do
     * that, call skipBlanks() or skipWhitespace() first.
     */
-   public static boolean eof()  { 
-      return peek() == EOF; 
+   public static boolean eof() {
+      return reader.eof();
    }
    
    /**
@@ -476,8 +383,8 @@ public class TextIO {
     * This method will throw an IllegalArgumentException if the input is at end-of-file (which will 
     * not ordinarily happen if reading from standard input).
     */
-   public static char getAnyChar() { 
-      return readChar(); 
+   public static char getAnyChar() {
+      return reader.getAnyChar();
    }
 
    /**
@@ -487,8 +394,8 @@ public class TextIO {
     * as the character '\n', even when the actual end-of-line in the input source is something else, 
     * such as '\r' or "\r\n".  This method never causes an error.
     */
-   public static char peek() { 
-      return lookChar();
+   public static char peek() {
+      return reader.peek();
    }
    
    /**
@@ -497,30 +404,8 @@ public class TextIO {
     * This method never causes an error.  (Ordinarily, end-of-file is not possible when reading from
     * standard input.)
     */
-   public static void skipBlanks() { 
-      char ch=lookChar();
-      while (ch != EOF && ch != '\n' && Character.isWhitespace(ch)) {
-         readChar();
-         ch = lookChar();
-      }
-   }
-
-   /**
-    * Skips over any whitespace characters, including for end-of-lines.  After this method is called,
-    * the next input character is either an end-of-file or a non-whitespace character.
-    * This method never causes an error. (Ordinarily, end-of-file is not possible when reading from
-    * standard input.)
-    */
-   private static void skipWhitespace() {
-      char ch=lookChar();
-      while (ch != EOF && Character.isWhitespace(ch)) {
-         readChar();
-         if (ch == '\n' && readingStandardInput && writingStandardOutput) {
-            out.print("? ");
-            out.flush();
-         }
-         ch = lookChar();
-      }
+   public static void skipBlanks() {
+      reader.skipBlanks();
    }
 
    /**
@@ -529,10 +414,8 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static byte getlnByte() { 
-      byte x=getByte(); 
-      emptyBuffer(); 
-      return x; 
+   public static byte getlnByte() {
+      return reader.getlnByte();
    }
    
    /**
@@ -542,9 +425,7 @@ public class TextIO {
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
    public static short getlnShort() {
-      short x=getShort();
-      emptyBuffer(); 
-      return x; 
+      return reader.getlnShort();
    }
    
    /**
@@ -553,10 +434,8 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static int getlnInt() { 
-      int x=getInt(); 
-      emptyBuffer(); 
-      return x; 
+   public static int getlnInt() {
+      return reader.getlnInt();
    }
    
    /**
@@ -566,9 +445,7 @@ public class TextIO {
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
    public static long getlnLong() {
-      long x=getLong(); 
-      emptyBuffer(); 
-      return x;
+      return reader.getlnLong();
    }
    
    /**
@@ -578,9 +455,7 @@ public class TextIO {
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
    public static float getlnFloat() {
-      float x=getFloat(); 
-      emptyBuffer(); 
-      return x;
+      return reader.getlnFloat();
    }
    
    /**
@@ -589,10 +464,8 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static double getlnDouble() { 
-      double x=getDouble(); 
-      emptyBuffer(); 
-      return x; 
+   public static double getlnDouble() {
+      return reader.getlnDouble();
    }
    
    /**
@@ -603,9 +476,7 @@ public class TextIO {
     * an end-of-file is encountered.
     */
    public static char getlnChar() {
-      char x=getChar(); 
-      emptyBuffer(); 
-      return x;
+      return reader.getlnChar();
    }
    
    /**
@@ -617,10 +488,8 @@ public class TextIO {
     * either upper case or lower case. One "word" of input is read, using the getWord() method, and it
     * must be one of these; note that the "word"  must be terminated by a whitespace character (or end-of-file).
     */
-   public static boolean getlnBoolean() { 
-      boolean x=getBoolean(); 
-      emptyBuffer();
-      return x; 
+   public static boolean getlnBoolean() {
+      return reader.getlnBoolean();
    }
    
    /**
@@ -631,17 +500,15 @@ public class TextIO {
     * if an end-of-file is encountered.
     */
    public static String getlnWord() {
-      String x=getWord(); 
-      emptyBuffer(); 
-      return x; 
+      return reader.getlnWord();
    }
    
    /**
     * This is identical to getln().
     */
    public static String getlnString() {
-      return getln();
-   } 
+      return reader.getlnString();
+   }
    
    /**
     * Reads all the characters from the current input source, up to the next end-of-line.  The end-of-line
@@ -651,13 +518,7 @@ public class TextIO {
     * In other cases, an IllegalArgumentException will be thrown if an end-of-file is encountered.
     */
    public static String getln() {
-      StringBuffer s = new StringBuffer(100);
-      char ch = readChar();
-      while (ch != '\n') {
-         s.append(ch);
-         ch = readChar();
-      }
-      return s.toString();
+      return reader.getln();
    }
    
    /**
@@ -666,8 +527,8 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static byte getByte()   { 
-      return (byte)readInteger(-128L,127L); 
+   public static byte getByte() {
+      return reader.getByte();
    }
 
    /**
@@ -676,9 +537,9 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static short getShort() { 
-      return (short)readInteger(-32768L,32767L);
-   }   
+   public static short getShort() {
+      return reader.getShort();
+   }
    
    /**
     * Skips whitespace characters and then reads a value of type int from input.  Any additional characters on
@@ -686,8 +547,8 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static int getInt()     { 
-      return (int)readInteger(Integer.MIN_VALUE, Integer.MAX_VALUE);
+   public static int getInt() {
+      return reader.getInt();
    }
    
    /**
@@ -696,8 +557,8 @@ public class TextIO {
     * this will not produce an error; the user will be prompted repeatedly for input until a legal value
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
-   public static long getLong()   { 
-      return readInteger(Long.MIN_VALUE, Long.MAX_VALUE); 
+   public static long getLong() {
+      return reader.getLong();
    }
    
    /**
@@ -706,9 +567,8 @@ public class TextIO {
     * this will not produce an error.  In other cases, an IllegalArgumentException will be thrown if an end-of-file
     * is encountered.
     */
-   public static char getChar() { 
-      skipWhitespace();
-      return readChar();
+   public static char getChar() {
+      return reader.getChar();
    }
    
    /**
@@ -718,32 +578,7 @@ public class TextIO {
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
    public static float getFloat() {
-      float x = 0.0F;
-      while (true) {
-         String str = readRealString();
-         if (str == null) {
-            errorMessage("Floating point number not found.",
-                  "Real number in the range " + (-Float.MAX_VALUE) + " to " + Float.MAX_VALUE);
-         }
-         else {
-            try { 
-               x = Float.parseFloat(str); 
-            }
-            catch (NumberFormatException e) {
-               errorMessage("Illegal floating point input, " + str + ".",
-                     "Real number in the range " +  (-Float.MAX_VALUE) + " to " + Float.MAX_VALUE);
-               continue;
-            }
-            if (Float.isInfinite(x)) {
-               errorMessage("Floating point input outside of legal range, " + str + ".",
-                     "Real number in the range " +  (-Float.MAX_VALUE) + " to " + Float.MAX_VALUE);
-               continue;
-            }
-            break;
-         }
-      }
-      inputErrorCount = 0;
-      return x;
+      return reader.getFloat();
    }
    
    /**
@@ -753,32 +588,7 @@ public class TextIO {
     * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
     */
    public static double getDouble() {
-      double x = 0.0;
-      while (true) {
-         String str = readRealString();
-         if (str == null) {
-            errorMessage("Floating point number not found.",
-                  "Real number in the range " + (-Double.MAX_VALUE) + " to " + Double.MAX_VALUE);
-         }
-         else {
-            try { 
-               x = Double.parseDouble(str); 
-            }
-            catch (NumberFormatException e) {
-               errorMessage("Illegal floating point input, " + str + ".",
-                     "Real number in the range " + (-Double.MAX_VALUE) + " to " + Double.MAX_VALUE);
-               continue;
-            }
-            if (Double.isInfinite(x)) {
-               errorMessage("Floating point input outside of legal range, " + str + ".",
-                     "Real number in the range " + (-Double.MAX_VALUE) + " to " + Double.MAX_VALUE);
-               continue;
-            }
-            break;
-         }
-      }
-      inputErrorCount = 0;
-      return x;
+      return reader.getDouble();
    }
    
    /**
@@ -789,14 +599,7 @@ public class TextIO {
     * if an end-of-file is encountered.
     */
    public static String getWord() {
-      skipWhitespace();
-      StringBuffer str = new StringBuffer(50);
-      char ch = lookChar();
-      while (ch == EOF || !Character.isWhitespace(ch)) {
-         str.append(readChar());
-         ch = lookChar();
-      }
-      return str.toString();
+      return reader.getWord();
    }
    
    /**
@@ -809,208 +612,26 @@ public class TextIO {
     * must be one of these; note that the "word"  must be terminated by a whitespace character (or end-of-file).
     */
    public static boolean getBoolean() {
-      boolean ans = false;
-      while (true) {
-         String s = getWord();
-         if ( s.equalsIgnoreCase("true") || s.equalsIgnoreCase("t") ||
-               s.equalsIgnoreCase("yes")  || s.equalsIgnoreCase("y") ||
-               s.equals("1") ) {
-            ans = true;
-            break;
-         }
-         else if ( s.equalsIgnoreCase("false") || s.equalsIgnoreCase("f") ||
-               s.equalsIgnoreCase("no")  || s.equalsIgnoreCase("n") ||
-               s.equals("0") ) {
-            ans = false;
-            break;
-         }
-         else
-            errorMessage("Illegal boolean input value.",
-            "one of:  true, false, t, f, yes, no, y, n, 0, or 1");
-      }
-      inputErrorCount = 0;
-      return ans;
+      return reader.getBoolean();
    }
    
-   // ***************** Everything beyond this point is private implementation detail *******************
-   
-   private static String inputFileName;  // Name of file that is the current input source, or null if the source is not a file.
-   private static String outputFileName; // Name of file that is the current output destination, or null if the destination is not a file.
-   
-   private static JFileChooser fileDialog; // Dialog used by readUserSelectedFile() and writeUserSelectedFile()
-   
-   private final static BufferedReader standardInput = new BufferedReader(new InputStreamReader(java.lang.System.in));  // wraps standard input stream
-   private final static PrintWriter standardOutput = new PrintWriter(java.lang.System.out);  // wraps standard output stream
-
-   private static BufferedReader in = standardInput;  // Stream that data is read from; the current input source.
-   private static PrintWriter out = standardOutput;   // Stream that data is written to; the current output destination.
-   
-   private static boolean readingStandardInput = true;
-   private static boolean writingStandardOutput = true;
-   
-   private static int inputErrorCount;  // Number of consecutive errors on standard input; reset to 0 when a successful read occurs.
-   private static int outputErrorCount;  // Number of errors on standard output since it was selected as the output destination.
-   
-   private static Matcher integerMatcher;  // Used for reading integer numbers; created from the integer Regex Pattern.
-   private static Matcher floatMatcher;   // Used for reading floating point numbers; created from the floatRegex Pattern.
-   private final static Pattern integerRegex = Pattern.compile("(\\+|-)?[0-9]+");
-   private final static Pattern floatRegex = Pattern.compile("(\\+|-)?(([0-9]+(\\.[0-9]*)?)|(\\.[0-9]+))((e|E)(\\+|-)?[0-9]+)?");
-   
-   private static String buffer = null;  // One line read from input.
-   private static int pos = 0;           // Position of next char in input line that has not yet been processed.
-   
-   private static String readRealString() {   // read chars from input following syntax of real numbers
-      skipWhitespace();
-      if (lookChar() == EOF)
-         return null;
-      if (floatMatcher == null)
-         floatMatcher = floatRegex.matcher(buffer);
-      floatMatcher.region(pos,buffer.length());
-      if (floatMatcher.lookingAt()) {
-         String str = floatMatcher.group();
-         pos = floatMatcher.end();
-         return str;
-      }
-      else 
-         return null;
-   }
-   
-   private static String readIntegerString() {  // read chars from input following syntax of integers
-      skipWhitespace();
-      if (lookChar() == EOF)
-         return null;
-      if (integerMatcher == null)
-         integerMatcher = integerRegex.matcher(buffer);
-      integerMatcher.region(pos,buffer.length());
-      if (integerMatcher.lookingAt()) {
-         String str = integerMatcher.group();
-         pos = integerMatcher.end();
-         return str;
-      }
-      else 
-         return null;
-   }
-   
-   private static long readInteger(long min, long max) {  // read long integer, limited to specified range
-      long x=0;
-      while (true) {
-         String s = readIntegerString();
-         if (s == null){
-            errorMessage("Integer value not found in input.",
-                  "Integer in the range " + min + " to " + max);
-         }
-         else {
-            String str = s.toString();
-            try { 
-               x = Long.parseLong(str);
-            }
-            catch (NumberFormatException e) {
-               errorMessage("Illegal integer input, " + str + ".",
-                     "Integer in the range " + min + " to " + max);
-               continue;
-            }
-            if (x < min || x > max) {
-               errorMessage("Integer input outside of legal range, " + str + ".",
-                     "Integer in the range " + min + " to " + max);
-               continue;
-            }
-            break;
-         }
-      }
-      inputErrorCount = 0;
-      return x;
-   }
-   
-   
-   private static void errorMessage(String message, String expecting) {  // Report error on input.
-      if (readingStandardInput && writingStandardOutput) {
-             // inform user of error and force user to re-enter.
-         out.println();
-         out.print("  *** Error in input: " + message + "\n");
-         out.print("  *** Expecting: " + expecting + "\n");
-         out.print("  *** Discarding Input: ");
-         if (lookChar() == '\n')
-            out.print("(end-of-line)\n\n");
-         else {
-            while (lookChar() != '\n')    // Discard and echo remaining chars on the current line of input.
-               out.print(readChar());
-            out.print("\n\n");
-         }
-         out.print("Please re-enter: ");
-         out.flush();
-         readChar();  // discard the end-of-line character
-         inputErrorCount++;
-         if (inputErrorCount >= 10)
-            throw new IllegalArgumentException("Too many input consecutive input errors on standard input.");
-      }
-      else if (inputFileName != null)
-         throw new IllegalArgumentException("Error while reading from file \"" + inputFileName + "\":\n" 
-               + message + "\nExpecting " + expecting);
-      else
-         throw new IllegalArgumentException("Error while reading from inptu stream:\n" 
-               + message + "\nExpecting " + expecting);
-   }
-   
-   private static char lookChar() {  // return next character from input
-      if (buffer == null || pos > buffer.length())
-         fillBuffer();
-      if (buffer == null)
-         return EOF;
-      else if (pos == buffer.length())
-         return '\n';
-      else 
-         return buffer.charAt(pos);
-   }
-   
-   private static char readChar() {  // return and discard next character from input
-      char ch = lookChar();
-      if (buffer == null) {
-         if (readingStandardInput)
-            throw new IllegalArgumentException("Attempt to read past end-of-file in standard input???");
-         else
-            throw new IllegalArgumentException("Attempt to read past end-of-file in file \"" + inputFileName + "\".");
-      }
-      pos++;
-      return ch;
+   /**
+    * Returns the TextReader that the input methods of TextIO delegate to.
+    */
+   public static TextReader getReader() {
+      return reader;
    }
-      
-   private static void fillBuffer() {    // Wait for user to type a line and press return,
-      try {
-         buffer = in.readLine();
-      }
-      catch (Exception e) {
-         if (readingStandardInput)
-            throw new IllegalArgumentException("Error while reading standard input???");
-         else if (inputFileName != null)
-            throw new IllegalArgumentException("Error while attempting to read from file \"" + inputFileName + "\".");
-         else
-            throw new IllegalArgumentException("Errow while attempting to read form an input stream.");
-      }
-      pos = 0;
-      floatMatcher = null;
-      integerMatcher = null;
-   }
-   
-   private static void emptyBuffer() {   // discard the rest of the current line of input
-      buffer = null;
-   }
-   
-   private static void outputError(String message) {  // Report an error on output.
-      if (writingStandardOutput) {
-        java.lang.System.err.println("Error occurred in TextIO while writing to standard output!!");
-         outputErrorCount++;
-         if (outputErrorCount >= 10) {
-            outputErrorCount = 0;
-            throw new IllegalArgumentException("Too many errors while writing to standard output.");
-         }
-      }
-      else if (outputFileName != null){
-         throw new IllegalArgumentException("Error occurred while writing to file \"" 
-               + outputFileName+ "\":\n   " + message);
-      }
-      else {
-         throw new IllegalArgumentException("Error occurred while writing to output stream:\n   " + message);
-      }
+
+   /**
+    * Returns the TextWriter that the output methods of TextIO delegate to.
+    */
+   public static TextWriter getWriter() {
+      return writer;
    }
-      
+
+   // ***************** Everything beyond this point is private implementation detail *******************
+
+   private final static TextWriter writer = new TextWriter();  // The default output destination.
+   private final static TextReader reader = new TextReader(writer);  // The default input source, which prompts through writer.
+
 } // end of class TextIO
@@ -0,0 +1,87 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+
+/**
+ * The GUI file-selection dialogs of TextIO.readUserSelectedFile() and
+ * TextIO.writeUserSelectedFile().  They are kept in this class, rather than in TextIO,
+ * so that Swing and AWT are only loaded by a program that actually shows a dialog; a
+ * program that only reads and writes text (e.g. on a headless server) never loads them.
+ */
+final class TextIOFileDialogs {
+
+   private static JFileChooser fileDialog; // Dialog used by readUserSelectedFile() and writeUserSelectedFile()
+
+   private TextIOFileDialogs() {
+   }
+
+   /**
+    * Lets the user select an input file and makes it the input source of reader.
+    * Returns false if the user cancels the dialog.  See TextIO.readUserSelectedFile().
+    */
+   static synchronized boolean readUserSelectedFile(TextReader reader) {
+      if (fileDialog == null)
+         fileDialog = new JFileChooser();
+      fileDialog.setDialogTitle("Select File for Input");
+      int option = fileDialog.showOpenDialog(null);
+      if (option != JFileChooser.APPROVE_OPTION)
+         return false;
+      File selectedFile = fileDialog.getSelectedFile();
+      BufferedReader newin;
+      try {
+         newin = new BufferedReader( new FileReader(selectedFile) );
+      }
+      catch (Exception e) {
+         throw new IllegalArgumentException("Can't open file \"" + selectedFile.getName() + "\" for input.\n"
+                        + "(Error :" + e + ")");
+      }
+      reader.setInput(newin, selectedFile.getName());
+      return true;
+   }
+
+   /**
+    * Lets the user select an output file and makes it the output destination of writer.
+    * Returns false if the user cancels the dialog.  See TextIO.writeUserSelectedFile().
+    */
+   static synchronized boolean writeUserSelectedFile(TextWriter writer) {
+      if (fileDialog == null)
+         fileDialog = new JFileChooser();
+      fileDialog.setDialogTitle("Select File for Output");
+      File selectedFile;
+      while (true) {
+         int option = fileDialog.showSaveDialog(null);
+         if (option != JFileChooser.APPROVE_OPTION)
+            return false;  // user canceled
+         selectedFile = fileDialog.getSelectedFile();
+         if (selectedFile.exists()) {
+            int response = JOptionPane.showConfirmDialog(null,
+                  "The file \"" + selectedFile.getName() + "\" already exists.  Do you want to replace it?",
+                  "Replace existing file?",
+                  JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (response == JOptionPane.YES_OPTION)
+               break;
+         }
+         else {
+            break;
+         }
+      }
+      PrintWriter newout;
+      try {
+         newout = new PrintWriter(new FileWriter(selectedFile));
+      }
+      catch (Exception e) {
+         throw new IllegalArgumentException("Can't open file \"" + selectedFile.getName() + "\" for output.\n"
+                        + "(Error :" + e + ")");
+      }
+      writer.setOutput(newout, selectedFile.getName());
+      return true;
+   }
+
+} // end of class TextIOFileDialogs
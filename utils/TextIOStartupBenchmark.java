@@ -0,0 +1,161 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @overview A startup benchmark of {@link TextIO}: runs the plain read path
+ *           (read a file of numbers, write their sum) in a child JVM with
+ *           <tt>-verbose:class</tt>, and reports the startup time, the number
+ *           of classes loaded and any desktop (Swing/AWT) classes among them.
+ *           The file dialogs of TextIO are in {@link TextIOFileDialogs}, so
+ *           none should be loaded.
+ *
+ *           <p>Usage: <tt>java utils.TextIOStartupBenchmark [runs]</tt>
+ *           (default: 5 runs). Exits with status 1 if a desktop class was
+ *           loaded.
+ *
+ * @author dmle
+ */
+public class TextIOStartupBenchmark {
+
+  private static final String CHILD = "-child";
+
+  private static final String[] DESKTOP_PACKAGES = { "javax.swing.",
+      "java.awt.", "sun.awt.", "sun.java2d.", "utils.TextIOFileDialogs" };
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals(CHILD)) {
+      runChild(args[1]);
+      return;
+    }
+
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+
+    File data = File.createTempFile("textio", ".txt");
+    data.deleteOnExit();
+    PrintWriter out = new PrintWriter(new FileWriter(data));
+    for (int i = 0; i < 10000; i++) {
+      out.println(i + " " + (i * 0.5));
+    }
+    out.close();
+
+    println("TextIO startup benchmark: " + runs + " runs");
+
+    long best = Long.MAX_VALUE;
+    for (int run = 1; run <= runs; run++) {
+      long t0 = java.lang.System.nanoTime();
+      List<String> lines = runChild(data, false);
+      long millis = (java.lang.System.nanoTime() - t0) / 1000000;
+      best = Math.min(best, millis);
+      println("  run " + run + ": " + millis + " ms (" + lines.get(0) + ")");
+    }
+    println("  best: " + best + " ms");
+
+    List<String> lines = runChild(data, true);
+    int loaded = 0;
+    List<String> desktop = new ArrayList<>();
+    for (String line : lines) {
+      String cls = loadedClass(line);
+      if (cls == null)
+        continue;
+      loaded++;
+      for (String pkg : DESKTOP_PACKAGES) {
+        if (cls.startsWith(pkg)) {
+          desktop.add(cls);
+          break;
+        }
+      }
+    }
+
+    println("classes loaded: " + loaded);
+    println("desktop classes loaded: " + desktop.size());
+    for (String cls : desktop) {
+      println("  " + cls);
+    }
+    if (!desktop.isEmpty())
+      java.lang.System.exit(1);
+  }
+
+  /**
+   * @effects runs the plain read path of TextIO on <tt>fileName</tt>
+   */
+  private static void runChild(String fileName) {
+    TextIO.readFile(fileName);
+    long ints = 0;
+    double reals = 0;
+    int count = 0;
+    while (!TextIO.eof()) {
+      ints += TextIO.getInt();
+      reals += TextIO.getlnDouble();
+      count++;
+    }
+    TextIO.putf("%d lines, sums %d and %.1f%n", count, ints, reals);
+  }
+
+  /**
+   * @effects runs a child JVM on <tt>data</tt> (with <tt>-verbose:class</tt>
+   *          if <tt>verbose</tt>) and returns the lines of its output
+   */
+  private static List<String> runChild(File data, boolean verbose)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(java.lang.System.getProperty("java.home") + File.separator
+        + "bin" + File.separator + "java");
+    if (verbose)
+      command.add("-verbose:class");
+    command.add("-cp");
+    command.add(java.lang.System.getProperty("java.class.path"));
+    command.add(TextIOStartupBenchmark.class.getName());
+    command.add(CHILD);
+    command.add(data.getPath());
+
+    Process child = new ProcessBuilder(command).redirectErrorStream(true)
+        .start();
+    List<String> lines = new ArrayList<>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        child.getInputStream()));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      in.close();
+    }
+
+    int status = child.waitFor();
+    if (status != 0 || lines.isEmpty())
+      throw new IOException("child JVM failed (status " + status + "): "
+          + lines);
+    return lines;
+  }
+
+  /**
+   * @effects if <tt>line</tt> reports a loaded class (in the format of
+   *          <tt>-verbose:class</tt> of Java 8 or of Java 9 and later),
+   *          returns the name of the class, else returns <tt>null</tt>
+   */
+  private static String loadedClass(String line) {
+    int start;
+    if (line.startsWith("[Loaded "))
+      start = "[Loaded ".length();
+    else if (line.contains("[class,load]"))
+      start = line.indexOf("] ", line.indexOf("[class,load]")) + 2;
+    else
+      return null;
+
+    int end = line.indexOf(' ', start);
+    return line.substring(start, (end < 0) ? line.length() : end);
+  }
+
+  private static void println(String s) {
+    java.lang.System.out.println(s);
+  }
+}
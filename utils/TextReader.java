@@ -0,0 +1,709 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * A TextReader reads text from an input source, which is standard input by default but
+ * can be redirected to a file or to another input stream.  It provides the same input
+ * methods as TextIO (getInt, getDouble, getln, ...), but each TextReader holds its own
+ * input source and line buffer, so that many of them can be used at the same time, e.g.
+ * to parse many input files concurrently on separate threads.
+ * <p>When a TextReader reads standard input and its echo writer (if any) writes to
+ * standard output, the user is prompted again after an illegal input, as in TextIO;
+ * in every other case an illegal input causes an IllegalArgumentException.
+ * <p>A TextReader is thread-safe: all its methods are synchronized.  The static input
+ * methods of TextIO delegate to a default TextReader.
+ */
+public class TextReader {
+
+   /**
+    * The value returned by the peek() method when the input is at end-of-file.
+    * (The value of this constant is (char)0xFFFF.)
+    */
+   public final static char EOF = (char)0xFFFF;
+
+   /**
+    * The value returned by the peek() method when the input is at end-of-line.
+    * The value of this constant is the character '\n'.
+    */
+   public final static char EOLN = '\n';          // The value returned by peek() when at end-of-line.
+
+   private final static BufferedReader standardInput = new BufferedReader(new InputStreamReader(java.lang.System.in));  // wraps standard input stream
+
+   private String inputFileName;  // Name of file that is the current input source, or null if the source is not a file.
+
+   private BufferedReader in = standardInput;  // Stream that data is read from; the current input source.
+   private boolean readingStandardInput = true;
+
+   private TextWriter echo;  // Writer used to prompt the user on standard input, or null.
+
+   private int inputErrorCount;  // Number of consecutive errors on standard input; reset to 0 when a successful read occurs.
+
+   private int tokenStart;  // Start of the last number read by readRealToken() or readIntegerToken().
+
+   private String buffer = null;  // One line read from input.
+   private int pos = 0;           // Position of next char in input line that has not yet been processed.
+
+   /**
+    * Creates a TextReader that reads from standard input, with no echo writer.
+    */
+   public TextReader() {
+   }
+
+   /**
+    * Creates a TextReader that reads from standard input and prompts the user
+    * through echo (if it is writing to standard output).
+    */
+   public TextReader(TextWriter echo) {
+      this.echo = echo;
+   }
+
+   /**
+    * Creates a TextReader that reads from the file with the specified name.  An
+    * IllegalArgumentException is thrown if the file can't be opened.
+    */
+   public TextReader(String fileName) {
+      readFile(fileName);
+   }
+
+   /**
+    * Creates a TextReader that reads from inputStream, or from standard input if
+    * inputStream is null.
+    */
+   public TextReader(InputStream inputStream) {
+      readStream(inputStream);
+   }
+
+   /**
+    * Creates a TextReader that reads from inputStream, or from standard input if
+    * inputStream is null.
+    */
+   public TextReader(Reader inputStream) {
+      readStream(inputStream);
+   }
+
+   /**
+    * Sets the writer used to prompt the user when reading standard input (null for none).
+    */
+   public synchronized void setEcho(TextWriter echo) {
+      this.echo = echo;
+   }
+
+   public synchronized TextWriter getEcho() {
+      return echo;
+   }
+
+   /**
+    * After this method is called, input will be read from standard input (as it
+    * is in the default state).  If a file or stream was previously the input source, that file
+    * or stream is closed.
+    */
+   public synchronized void readStandardInput() {
+      if (readingStandardInput)
+         return;
+      try {
+         in.close();
+      }
+      catch (Exception e) {
+      }
+      emptyBuffer();  // Added November 2007
+      in = standardInput;
+      inputFileName = null;
+      readingStandardInput = true;
+      inputErrorCount = 0;
+   }
+
+   /**
+    * After this method is called, input will be read from inputStream, provided it
+    * is non-null.  If inputStream is null, then this method has the same effect
+    * as calling readStandardInput(); that is, future input will come from the
+    * standard input stream.
+    */
+   public synchronized void readStream(InputStream inputStream) {
+      if (inputStream == null)
+         readStandardInput();
+      else
+         readStream(new InputStreamReader(inputStream));
+   }
+
+   /**
+    * After this method is called, input will be read from inputStream, provided it
+    * is non-null.  If inputStream is null, then this method has the same effect
+    * as calling readStandardInput(); that is, future input will come from the
+    * standard input stream.
+    */
+   public synchronized void readStream(Reader inputStream) {
+      if (inputStream == null)
+         readStandardInput();
+      else {
+         if ( inputStream instanceof BufferedReader)
+            in = (BufferedReader)inputStream;
+         else
+            in = new BufferedReader(inputStream);
+         emptyBuffer();  // Added November 2007
+         inputFileName = null;
+         readingStandardInput = false;
+         inputErrorCount = 0;
+      }
+   }
+
+   /**
+    * Opens a file with a specified name for input.  If the file name is null, this has
+    * the same effect as calling readStandardInput(); that is, input will be read from standard
+    * input.  If an
+    * error occurs while trying to open the file, an exception of type IllegalArgumentException
+    * is thrown, and the input source is not changed.  If the file is opened
+    * successfully, then after this method is called, all of the input routines will read
+    * from the file, instead of from standard input.
+    */
+   public synchronized void readFile(String fileName) {
+      if (fileName == null) // Go back to reading standard input
+         readStandardInput();
+      else {
+         BufferedReader newin;
+         try {
+            newin = new BufferedReader( new FileReader(fileName) );
+         }
+         catch (Exception e) {
+            throw new IllegalArgumentException("Can't open file \"" + fileName + "\" for input.\n"
+                           + "(Error :" + e + ")");
+         }
+         setInput(newin, fileName);
+      }
+   }
+
+   /**
+    * If this TextReader is currently reading from a file, then the return value is the name of the file.
+    * If it is reading from standard input or from a stream, then the return value is null.
+    */
+   public synchronized String getInputFileName() {
+      return inputFileName;
+   }
+
+   // *************************** Input Methods *********************************
+
+   /**
+    * Test whether the next character in the current input source is an end-of-line.  Note that
+    * this method does NOT skip whitespace before testing for end-of-line -- if you want to do
+    * that, call skipBlanks() first.
+    */
+   public synchronized boolean eoln() {
+      return peek() == '\n';
+   }
+
+   /**
+    * Test whether the next character in the current input source is an end-of-file.  Note that
+    * this method does NOT skip whitespace before testing for end-of-line -- if you want to do
+    * that, call skipBlanks() or skipWhitespace() first.
+    */
+   public synchronized boolean eof()  {
+      return peek() == EOF;
+   }
+
+   /**
+    * Reads the next character from the current input source.  The character can be a whitespace
+    * character; compare this to the getChar() method, which skips over whitespace and returns the
+    * next non-whitespace character.  An end-of-line is always returned as the character '\n', even
+    * when the actual end-of-line in the input source is something else, such as '\r' or "\r\n".
+    * This method will throw an IllegalArgumentException if the input is at end-of-file (which will
+    * not ordinarily happen if reading from standard input).
+    */
+   public synchronized char getAnyChar() {
+      return readChar();
+   }
+
+   /**
+    * Returns the next character in the current input source, without actually removing that
+    * character from the input.  The character can be a whitespace character and can be the
+    * end-of-file character (specified by the constant EOF).An end-of-line is always returned
+    * as the character '\n', even when the actual end-of-line in the input source is something else,
+    * such as '\r' or "\r\n".  This method never causes an error.
+    */
+   public synchronized char peek() {
+      return lookChar();
+   }
+
+   /**
+    * Skips over any whitespace characters, except for end-of-lines.  After this method is called,
+    * the next input character is either an end-of-line, an end-of-file, or a non-whitespace character.
+    * This method never causes an error.  (Ordinarily, end-of-file is not possible when reading from
+    * standard input.)
+    */
+   public synchronized void skipBlanks() {
+      char ch=lookChar();
+      while (ch != EOF && ch != '\n' && Character.isWhitespace(ch)) {
+         readChar();
+         ch = lookChar();
+      }
+   }
+
+   /**
+    * Skips over any whitespace characters, including for end-of-lines.  After this method is called,
+    * the next input character is either an end-of-file or a non-whitespace character.
+    * This method never causes an error. (Ordinarily, end-of-file is not possible when reading from
+    * standard input.)
+    */
+   private void skipWhitespace() {
+      char ch=lookChar();
+      while (ch != EOF && Character.isWhitespace(ch)) {
+         readChar();
+         if (ch == '\n' && isInteractive())
+            echo.prompt("? ");
+         ch = lookChar();
+      }
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type byte from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized byte getlnByte() {
+      byte x=getByte();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type short from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized short getlnShort() {
+      short x=getShort();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type int from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized int getlnInt() {
+      int x=getInt();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type long from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized long getlnLong() {
+      long x=getLong();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type float from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized float getlnFloat() {
+      float x=getFloat();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type double from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized double getlnDouble() {
+      double x=getDouble();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type char from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  Note that the value
+    * that is returned will be a non-whitespace character; compare this with the getAnyChar() method.
+    * When using standard IO, this will not produce an error.  In other cases, an error can occur if
+    * an end-of-file is encountered.
+    */
+   public synchronized char getlnChar() {
+      char x=getChar();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type boolean from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    * <p>Legal inputs for a boolean input are: true, t, yes, y, 1, false, f, no, n, and 0; letters can be
+    * either upper case or lower case. One "word" of input is read, using the getWord() method, and it
+    * must be one of these; note that the "word"  must be terminated by a whitespace character (or end-of-file).
+    */
+   public synchronized boolean getlnBoolean() {
+      boolean x=getBoolean();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads one "word" from input, discarding the rest of
+    * the current line of input (including the next end-of-line character, if any).  A word is defined as
+    * a sequence of non-whitespace characters (not just letters!).   When using standard IO,
+    * this will not produce an error.  In other cases, an IllegalArgumentException will be thrown
+    * if an end-of-file is encountered.
+    */
+   public synchronized String getlnWord() {
+      String x=getWord();
+      emptyBuffer();
+      return x;
+   }
+
+   /**
+    * This is identical to getln().
+    */
+   public synchronized String getlnString() {
+      return getln();
+   }
+
+   /**
+    * Reads all the characters from the current input source, up to the next end-of-line.  The end-of-line
+    * is read but is not included in the return value.  Any other whitespace characters on the line are retained,
+    * even if they occur at the start of input.  The return value will be an empty string if there are no
+    * no characters before the end-of-line.  When using standard IO, this will not produce an error.
+    * In other cases, an IllegalArgumentException will be thrown if an end-of-file is encountered.
+    */
+   public synchronized String getln() {
+      StringBuffer s = new StringBuffer(100);
+      char ch = readChar();
+      while (ch != '\n') {
+         s.append(ch);
+         ch = readChar();
+      }
+      return s.toString();
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type byte from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized byte getByte()   {
+      return (byte)readInteger(-128L,127L);
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type short from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized short getShort() {
+      return (short)readInteger(-32768L,32767L);
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type int from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized int getInt()     {
+      return (int)readInteger(Integer.MIN_VALUE, Integer.MAX_VALUE);
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type long from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized long getLong()   {
+      return readInteger(Long.MIN_VALUE, Long.MAX_VALUE);
+   }
+
+   /**
+    * Skips whitespace characters and then reads a single non-whitespace character from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error.  In other cases, an IllegalArgumentException will be thrown if an end-of-file
+    * is encountered.
+    */
+   public synchronized char getChar() {
+      skipWhitespace();
+      return readChar();
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type float from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized float getFloat() {
+      float x = 0.0F;
+      while (true) {
+         if (!readRealToken()) {
+            errorMessage("Floating point number not found.",
+                  "Real number in the range " + (-Float.MAX_VALUE) + " to " + Float.MAX_VALUE);
+         }
+         else {
+            x = NumberParser.parseFloat(buffer, tokenStart, pos);
+            if (Float.isInfinite(x)) {
+               errorMessage("Floating point input outside of legal range, " + buffer.substring(tokenStart, pos) + ".",
+                     "Real number in the range " +  (-Float.MAX_VALUE) + " to " + Float.MAX_VALUE);
+               continue;
+            }
+            break;
+         }
+      }
+      inputErrorCount = 0;
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type double from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    */
+   public synchronized double getDouble() {
+      double x = 0.0;
+      while (true) {
+         if (!readRealToken()) {
+            errorMessage("Floating point number not found.",
+                  "Real number in the range " + (-Double.MAX_VALUE) + " to " + Double.MAX_VALUE);
+         }
+         else {
+            x = NumberParser.parseDouble(buffer, tokenStart, pos);
+            if (Double.isInfinite(x)) {
+               errorMessage("Floating point input outside of legal range, " + buffer.substring(tokenStart, pos) + ".",
+                     "Real number in the range " + (-Double.MAX_VALUE) + " to " + Double.MAX_VALUE);
+               continue;
+            }
+            break;
+         }
+      }
+      inputErrorCount = 0;
+      return x;
+   }
+
+   /**
+    * Skips whitespace characters and then reads one "word" from input. Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  A word is defined as
+    * a sequence of non-whitespace characters (not just letters!).   When using standard IO,
+    * this will not produce an error.  In other cases, an IllegalArgumentException will be thrown
+    * if an end-of-file is encountered.
+    */
+   public synchronized String getWord() {
+      skipWhitespace();
+      StringBuffer str = new StringBuffer(50);
+      char ch = lookChar();
+      while (ch == EOF || !Character.isWhitespace(ch)) {
+         str.append(readChar());
+         ch = lookChar();
+      }
+      return str.toString();
+   }
+
+   /**
+    * Skips whitespace characters and then reads a value of type boolean from input.  Any additional characters on
+    * the current line of input are retained, and will be read by the next input operation.  When using standard IO,
+    * this will not produce an error; the user will be prompted repeatedly for input until a legal value
+    * is input.  In other cases, an IllegalArgumentException will be thrown if a legal value is not found.
+    * <p>Legal inputs for a boolean input are: true, t, yes, y, 1, false, f, no, n, and 0; letters can be
+    * either upper case or lower case. One "word" of input is read, using the getWord() method, and it
+    * must be one of these; note that the "word"  must be terminated by a whitespace character (or end-of-file).
+    */
+   public synchronized boolean getBoolean() {
+      boolean ans = false;
+      while (true) {
+         String s = getWord();
+         if ( s.equalsIgnoreCase("true") || s.equalsIgnoreCase("t") ||
+               s.equalsIgnoreCase("yes")  || s.equalsIgnoreCase("y") ||
+               s.equals("1") ) {
+            ans = true;
+            break;
+         }
+         else if ( s.equalsIgnoreCase("false") || s.equalsIgnoreCase("f") ||
+               s.equalsIgnoreCase("no")  || s.equalsIgnoreCase("n") ||
+               s.equals("0") ) {
+            ans = false;
+            break;
+         }
+         else
+            errorMessage("Illegal boolean input value.",
+            "one of:  true, false, t, f, yes, no, y, n, 0, or 1");
+      }
+      inputErrorCount = 0;
+      return ans;
+   }
+
+   // ***************** Everything beyond this point is private implementation detail *******************
+
+   /**
+    * Makes newin, which is reading the file named fileName, the current input source,
+    * closing the previous one unless it is standard input.
+    */
+   synchronized void setInput(BufferedReader newin, String fileName) {
+      if (! readingStandardInput) { // close current input stream
+         try {
+            in.close();
+         }
+         catch (Exception e) {
+         }
+      }
+      emptyBuffer();  // Added November 2007
+      in = newin;
+      readingStandardInput = false;
+      inputErrorCount = 0;
+      inputFileName = fileName;
+   }
+
+   /**
+    * Returns true if the user should be prompted again after an input error, i.e. this is
+    * reading standard input and echoing to standard output.
+    */
+   private boolean isInteractive() {
+      return readingStandardInput && echo != null && echo.isWritingStandardOutput();
+   }
+
+   private boolean readRealToken() {   // read chars from input following syntax of real numbers into buffer[tokenStart..pos)
+      skipWhitespace();
+      if (lookChar() == EOF)
+         return false;
+      int end = NumberParser.scanReal(buffer, pos);
+      if (end < 0)
+         return false;
+      tokenStart = pos;
+      pos = end;
+      return true;
+   }
+
+   private boolean readIntegerToken() {  // read chars from input following syntax of integers into buffer[tokenStart..pos)
+      skipWhitespace();
+      if (lookChar() == EOF)
+         return false;
+      int end = NumberParser.scanInteger(buffer, pos);
+      if (end < 0)
+         return false;
+      tokenStart = pos;
+      pos = end;
+      return true;
+   }
+
+   private long readInteger(long min, long max) {  // read long integer, limited to specified range
+      long x=0;
+      while (true) {
+         if (!readIntegerToken()){
+            errorMessage("Integer value not found in input.",
+                  "Integer in the range " + min + " to " + max);
+         }
+         else {
+            try {
+               x = NumberParser.parseLong(buffer, tokenStart, pos);
+            }
+            catch (NumberFormatException e) {
+               errorMessage("Illegal integer input, " + buffer.substring(tokenStart, pos) + ".",
+                     "Integer in the range " + min + " to " + max);
+               continue;
+            }
+            if (x < min || x > max) {
+               errorMessage("Integer input outside of legal range, " + buffer.substring(tokenStart, pos) + ".",
+                     "Integer in the range " + min + " to " + max);
+               continue;
+            }
+            break;
+         }
+      }
+      inputErrorCount = 0;
+      return x;
+   }
+
+
+   private void errorMessage(String message, String expecting) {  // Report error on input.
+      if (isInteractive()) {
+             // inform user of error and force user to re-enter.
+         StringBuffer s = new StringBuffer();
+         s.append(java.lang.System.getProperty("line.separator"));
+         s.append("  *** Error in input: " + message + "\n");
+         s.append("  *** Expecting: " + expecting + "\n");
+         s.append("  *** Discarding Input: ");
+         if (lookChar() == '\n')
+            s.append("(end-of-line)\n\n");
+         else {
+            while (lookChar() != '\n')    // Discard and echo remaining chars on the current line of input.
+               s.append(readChar());
+            s.append("\n\n");
+         }
+         s.append("Please re-enter: ");
+         echo.prompt(s.toString());
+         readChar();  // discard the end-of-line character
+         inputErrorCount++;
+         if (inputErrorCount >= 10)
+            throw new IllegalArgumentException("Too many input consecutive input errors on standard input.");
+      }
+      else if (inputFileName != null)
+         throw new IllegalArgumentException("Error while reading from file \"" + inputFileName + "\":\n"
+               + message + "\nExpecting " + expecting);
+      else
+         throw new IllegalArgumentException("Error while reading from inptu stream:\n"
+               + message + "\nExpecting " + expecting);
+   }
+
+   private char lookChar() {  // return next character from input
+      if (buffer == null || pos > buffer.length())
+         fillBuffer();
+      if (buffer == null)
+         return EOF;
+      else if (pos == buffer.length())
+         return '\n';
+      else
+         return buffer.charAt(pos);
+   }
+
+   private char readChar() {  // return and discard next character from input
+      char ch = lookChar();
+      if (buffer == null) {
+         if (readingStandardInput)
+            throw new IllegalArgumentException("Attempt to read past end-of-file in standard input???");
+         else
+            throw new IllegalArgumentException("Attempt to read past end-of-file in file \"" + inputFileName + "\".");
+      }
+      pos++;
+      return ch;
+   }
+
+   private void fillBuffer() {    // Wait for user to type a line and press return,
+      if (isInteractive())
+         echo.drain();  // Show any buffered output, such as a prompt, before waiting.
+      try {
+         buffer = in.readLine();
+      }
+      catch (Exception e) {
+         if (readingStandardInput)
+            throw new IllegalArgumentException("Error while reading standard input???");
+         else if (inputFileName != null)
+            throw new IllegalArgumentException("Error while attempting to read from file \"" + inputFileName + "\".");
+         else
+            throw new IllegalArgumentException("Errow while attempting to read form an input stream.");
+      }
+      pos = 0;
+   }
+
+   private void emptyBuffer() {   // discard the rest of the current line of input
+      buffer = null;
+   }
+
+} // end of class TextReader
@@ -0,0 +1,546 @@
+package utils;
+
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+
+/**
+ * A TextWriter writes text to an output destination, which is standard output by
+ * default but can be redirected to a file or to another output stream.  It provides
+ * the same output methods as TextIO (put, putln, putf), but each TextWriter has its
+ * own output destination, so that several of them can be used at the same time.
+ * <p>A TextWriter is thread-safe: all its methods are synchronized, so that values
+ * written by different threads are not interleaved within a single call.  The
+ * static output methods of TextIO delegate to a default TextWriter.
+ * <p>Output is collected in an internal buffer and passed to the destination according
+ * to the writer's {@link FlushPolicy}.  By default it is flushed after every call, as
+ * TextIO has always done; for writing large amounts of output, a policy that flushes
+ * less often is much faster, but then the output must be flushed with flush() (or by
+ * changing the output destination) before the program ends.  Primitive values are
+ * written without boxing, and the common format strings of putf are parsed once and
+ * applied without a Formatter.
+ */
+public class TextWriter {
+
+   /**
+    * When a TextWriter passes its buffered output to its destination and flushes it.
+    */
+   public enum FlushPolicy {
+      /** After every output call (the default). */
+      EVERY_CALL,
+      /** After every call whose output contains an end-of-line, and whenever the buffer is full. */
+      NEWLINE,
+      /** Whenever the buffer is full. */
+      SIZE,
+      /** Only when flush() is called; a full buffer is passed to the destination without flushing it. */
+      MANUAL
+   }
+
+   /**
+    * The default size, in characters, of the internal buffer.
+    */
+   public final static int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+   private final static PrintWriter standardOutput = new PrintWriter(java.lang.System.out);  // wraps standard output stream
+   private final static String LINE_SEPARATOR = java.lang.System.lineSeparator();  // as written by PrintWriter.println()
+
+   private String outputFileName; // Name of file that is the current output destination, or null if the destination is not a file.
+   private PrintWriter out = standardOutput;   // Stream that data is written to; the current output destination.
+   private boolean writingStandardOutput = true;
+   private int outputErrorCount;  // Number of errors on standard output since it was selected as the output destination.
+
+   private FlushPolicy flushPolicy = FlushPolicy.EVERY_CALL;
+   private int bufferSize = DEFAULT_BUFFER_SIZE;
+   private final StringBuilder buffer = new StringBuilder();  // Output that has not yet been passed to out.
+   private final char[] transfer = new char[8192];  // Used to pass the buffer to out without creating a string.
+   private Formatter formatter;  // Formats into buffer the format strings that FormatString can't handle.
+
+   /**
+    * Creates a TextWriter that writes to standard output.
+    */
+   public TextWriter() {
+   }
+
+   /**
+    * Creates a TextWriter that writes to the file with the specified name.  An
+    * IllegalArgumentException is thrown if the file can't be opened.
+    */
+   public TextWriter(String fileName) {
+      writeFile(fileName);
+   }
+
+   /**
+    * Creates a TextWriter that writes to outputStream, or to standard output if
+    * outputStream is null.
+    */
+   public TextWriter(OutputStream outputStream) {
+      writeStream(outputStream);
+   }
+
+   /**
+    * Creates a TextWriter that writes to outputStream, or to standard output if
+    * outputStream is null.
+    */
+   public TextWriter(PrintWriter outputStream) {
+      writeStream(outputStream);
+   }
+
+   /**
+    * After this method is called, output will be written to standard output (as it
+    * is in the default state).  If a file or stream was previously open for output, it
+    * will be closed.
+    */
+   public synchronized void writeStandardOutput() {
+      if (writingStandardOutput)
+         return;
+      drain();
+      try {
+         out.close();
+      }
+      catch (Exception e) {
+      }
+      outputFileName = null;
+      outputErrorCount = 0;
+      out = standardOutput;
+      writingStandardOutput = true;
+   }
+
+   /**
+    * After this method is called, output will be sent to outputStream, provided it
+    * is non-null.  If outputStream is null, then this method has the same effect
+    * as calling writeStandardOutput(); that is, future output will be sent to the
+    * standard output stream.
+    */
+   public synchronized void writeStream(OutputStream outputStream) {
+      if (outputStream == null)
+         writeStandardOutput();
+      else
+         writeStream(new PrintWriter(outputStream));
+   }
+
+   /**
+    * After this method is called, output will be sent to outputStream, provided it
+    * is non-null.  If outputStream is null, then this method has the same effect
+    * as calling writeStandardOutput(); that is, future output will be sent to the
+    * standard output stream.
+    */
+   public synchronized void writeStream(PrintWriter outputStream) {
+      if (outputStream == null)
+         writeStandardOutput();
+      else {
+         drain();
+         out = outputStream;
+         outputFileName = null;
+         outputErrorCount = 0;
+         writingStandardOutput = false;
+      }
+   }
+
+   /**
+    * Opens a file with a specified name for output.  If the file name is null, this has
+    * the same effect as calling writeStandardOutput(); that is, output will be sent to standard
+    * output.  If an
+    * error occurs while trying to open the file, an exception of type IllegalArgumentException
+    * is thrown.  If the file is opened successfully, then after this method is called,
+    * all of the output routines will write to the file, instead of to  standard output.
+    * If an error occurs, the output destination is not changed.
+    */
+   public synchronized void writeFile(String fileName) {
+      if (fileName == null)  // Go back to reading standard output
+         writeStandardOutput();
+      else {
+         PrintWriter newout;
+         try {
+            newout = new PrintWriter(new FileWriter(fileName));
+         }
+         catch (Exception e) {
+            throw new IllegalArgumentException("Can't open file \"" + fileName + "\" for output.\n"
+                           + "(Error :" + e + ")");
+         }
+         setOutput(newout, fileName);
+      }
+   }
+
+   /**
+    * If this TextWriter is currently writing to a file, then the return value is the name of the file.
+    * If it is writing to standard output or to a stream, then the return value is null.
+    */
+   public synchronized String getOutputFileName() {
+      return outputFileName;
+   }
+
+   /**
+    * Returns true if this TextWriter is currently writing to standard output.
+    */
+   public synchronized boolean isWritingStandardOutput() {
+      return writingStandardOutput;
+   }
+
+   // *************************** Output Methods *********************************
+
+   /**
+    * Write a single value to the current output destination, using the default format
+    * and no extra spaces.  This method will handle any type of parameter, even one
+    * whose type is one of the primitive types.
+    */
+   public synchronized void put(Object x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write an int to the current output destination, in the same format as put(Object)
+    * but without boxing it.
+    */
+   public synchronized void put(int x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write a long to the current output destination, in the same format as put(Object)
+    * but without boxing it.
+    */
+   public synchronized void put(long x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write a float to the current output destination, in the same format as put(Object)
+    * but without boxing it.
+    */
+   public synchronized void put(float x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write a double to the current output destination, in the same format as put(Object)
+    * but without boxing it.
+    */
+   public synchronized void put(double x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write a char to the current output destination, in the same format as put(Object)
+    * but without boxing it.
+    */
+   public synchronized void put(char x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write a boolean to the current output destination, in the same format as put(Object)
+    * but without boxing it.
+    */
+   public synchronized void put(boolean x) {
+      int start = buffer.length();
+      buffer.append(x);
+      written(start);
+   }
+
+   /**
+    * Write a single value to the current output destination, using the default format
+    * and outputting at least minChars characters (with extra spaces added before the
+    * output value if necessary).  This method will handle any type of parameter, even one
+    * whose type is one of the primitive types.
+    * @param x The value to be output, which can be of any type.
+    * @param minChars The minimum number of characters to use for the output.  If x requires fewer
+    * then this number of characters, then extra spaces are added to the front of x to bring
+    * the total up to minChars.  If minChars is less than or equal to zero, then x will be printed
+    * in the minumum number of spaces possible.
+    */
+   public synchronized void put(Object x, int minChars)  {
+      int start = buffer.length();
+      appendPadded(x, minChars);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line.
+    */
+   public synchronized void putln(Object x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for an int.
+    */
+   public synchronized void putln(int x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a long.
+    */
+   public synchronized void putln(long x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a float.
+    */
+   public synchronized void putln(float x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a double.
+    */
+   public synchronized void putln(double x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a char.
+    */
+   public synchronized void putln(char x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x), followed by an end-of-line, for a boolean.
+    */
+   public synchronized void putln(boolean x) {
+      int start = buffer.length();
+      buffer.append(x).append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * This is equivalent to put(x,minChars), followed by an end-of-line.
+    */
+   public synchronized void putln(Object x, int minChars) {
+      int start = buffer.length();
+      appendPadded(x, minChars);
+      buffer.append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * Write an end-of-line character to the current output destination.
+    */
+   public synchronized void putln() {
+      int start = buffer.length();
+      buffer.append(LINE_SEPARATOR);
+      written(start);
+   }
+
+   /**
+    * Writes formatted output values to the current output destination.  This method has the
+    * same function as System.out.printf(); the details of formatted output are not discussed
+    * here.  The first parameter is a string that describes the format of the output.  There
+    * can be any number of additional parameters; these specify the values to be output and
+    * can be of any type.  This method will throw an IllegalArgumentException if the
+    * format string is null or if the format string is illegal for the values that are being
+    * output.
+    */
+   public synchronized void putf(String format, Object... items) {
+      if (format == null)
+         throw new IllegalArgumentException("Null format string in TextIO.putf() method.");
+      int start = buffer.length();
+      if (!FormatString.compile(format).appendTo(buffer, items)) {
+         try {
+            formatter().format(format,items);
+         }
+         catch (IllegalFormatException e) {
+            buffer.setLength(start);
+            throw new IllegalArgumentException("Illegal format string in TextIO.putf() method.");
+         }
+      }
+      written(start);
+   }
+
+   /**
+    * Passes any buffered output to the current output destination and flushes it.
+    */
+   public synchronized void flush() {
+      flushBuffer(true);
+   }
+
+   /**
+    * Sets when buffered output is passed to the output destination and flushed; see
+    * FlushPolicy.  If the policy is EVERY_CALL, any buffered output is flushed now.
+    */
+   public synchronized void setFlushPolicy(FlushPolicy policy) {
+      if (policy == null)
+         throw new IllegalArgumentException("Null flush policy.");
+      flushPolicy = policy;
+      if (policy == FlushPolicy.EVERY_CALL)
+         flushBuffer(true);
+   }
+
+   public synchronized FlushPolicy getFlushPolicy() {
+      return flushPolicy;
+   }
+
+   /**
+    * Sets the number of characters that the internal buffer holds before it is passed to
+    * the output destination (under every policy other than EVERY_CALL).
+    */
+   public synchronized void setBufferSize(int size) {
+      if (size <= 0)
+         throw new IllegalArgumentException("Illegal buffer size, " + size + ".");
+      bufferSize = size;
+      if (buffer.length() >= bufferSize)
+         flushBuffer(flushPolicy != FlushPolicy.MANUAL);
+   }
+
+   public synchronized int getBufferSize() {
+      return bufferSize;
+   }
+
+   // ***************** Everything beyond this point is private implementation detail *******************
+
+   /**
+    * Makes newout, which is writing to the file named fileName, the current output
+    * destination, closing the previous one unless it is standard output.
+    */
+   synchronized void setOutput(PrintWriter newout, String fileName) {
+      drain();
+      if (!writingStandardOutput) {
+         try {
+            out.close();
+         }
+         catch (Exception e) {
+         }
+      }
+      out = newout;
+      writingStandardOutput = false;
+      outputFileName = fileName;
+      outputErrorCount = 0;
+   }
+
+   /**
+    * Writes s to the current output destination without checking for errors; used by
+    * a TextReader to prompt the user and echo input errors.
+    */
+   synchronized void prompt(String s) {
+      buffer.append(s);
+      drain();
+   }
+
+   /**
+    * Passes any buffered output to the current output destination and flushes it, without
+    * checking for errors; used by a TextReader before it waits for the user to type a line.
+    */
+   synchronized void drain() {
+      writeBuffer();
+      out.flush();
+   }
+
+   /**
+    * Passes the buffered output to out and, if flushStream is true, flushes out and checks it
+    * for errors.
+    */
+   private void flushBuffer(boolean flushStream) {
+      writeBuffer();
+      if (flushStream) {
+         out.flush();
+         if (out.checkError())
+            outputError("Error while writing output.");
+      }
+   }
+
+   private void writeBuffer() {
+      int n = buffer.length();
+      for (int i = 0; i < n; i += transfer.length) {
+         int end = Math.min(n, i + transfer.length);
+         buffer.getChars(i, end, transfer, 0);
+         out.write(transfer, 0, end - i);
+      }
+      buffer.setLength(0);
+   }
+
+   /**
+    * Called after each output call, which appended buffer[start..] to the buffer; passes the
+    * buffer to out as required by the flush policy.
+    */
+   private void written(int start) {
+      switch (flushPolicy) {
+      case EVERY_CALL:
+         flushBuffer(true);
+         break;
+      case NEWLINE:
+         if (buffer.length() >= bufferSize || buffer.indexOf("\n", start) >= 0)
+            flushBuffer(true);
+         break;
+      case SIZE:
+         if (buffer.length() >= bufferSize)
+            flushBuffer(true);
+         break;
+      default:
+         if (buffer.length() >= bufferSize)
+            flushBuffer(false);
+      }
+   }
+
+   /**
+    * Appends x to the buffer, with spaces before it to make it at least minChars long.
+    */
+   private void appendPadded(Object x, int minChars) {
+      if (minChars > 0 && x instanceof Formattable)
+         formatter().format("%" + minChars + "s", x);
+      else {
+         int start = buffer.length();
+         buffer.append(x);
+         FormatString.pad(buffer, start, minChars, false, false);
+      }
+   }
+
+   /**
+    * Returns a Formatter that appends to the buffer, using the default format locale
+    * (as PrintWriter.printf does).
+    */
+   private Formatter formatter() {
+      Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+      if (formatter == null || formatter.locale() != locale)
+         formatter = new Formatter(buffer, locale);
+      return formatter;
+   }
+
+   private void outputError(String message) {  // Report an error on output.
+      if (writingStandardOutput) {
+        java.lang.System.err.println("Error occurred in TextIO while writing to standard output!!");
+         outputErrorCount++;
+         if (outputErrorCount >= 10) {
+            outputErrorCount = 0;
+            throw new IllegalArgumentException("Too many errors while writing to standard output.");
+         }
+      }
+      else if (outputFileName != null){
+         throw new IllegalArgumentException("Error occurred while writing to file \""
+               + outputFileName+ "\":\n   " + message);
+      }
+      else {
+         throw new IllegalArgumentException("Error occurred while writing to output stream:\n   " + message);
+      }
+   }
+
+} // end of class TextWriter
@@ -0,0 +1,82 @@
+package utils.db;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @overview A constructor of a domain class together with the binding of its
+ *           parameters to a sequence of input values.
+ *
+ * @attributes
+ *  constructor   Constructor
+ *  bindings      int[]
+ *
+ * @abstract_properties
+ *  bindings.length = constructor.parameterTypes.length /\
+ *  for all k. bindings[k] is the index of the input value that is passed
+ *  as the k-th argument of constructor
+ *
+ * @author dmle
+ */
+public class ConstructorMatch {
+  private final Constructor constructor;
+  private final int[] bindings;
+
+  ConstructorMatch(Constructor constructor, int[] bindings) {
+    this.constructor = constructor;
+    this.bindings = bindings;
+  }
+
+  /**
+   * @effects returns <tt>this.constructor</tt>
+   */
+  public Constructor getConstructor() {
+    return constructor;
+  }
+
+  /**
+   * @effects returns the index of the input value that is bound to the
+   *          <tt>k</tt>-th parameter of <tt>this.constructor</tt>
+   */
+  public int getBinding(int k) {
+    return bindings[k];
+  }
+
+  /**
+   * @requires <tt>inputs.size = bindings.length</tt>
+   * @effects returns an argument array for <tt>this.constructor</tt>, whose
+   *          elements are taken from <tt>inputs</tt> according to
+   *          <tt>this.bindings</tt>
+   */
+  public Object[] getArguments(List inputs) {
+    Object[] in = new Object[bindings.length];
+    int i = 0;
+    for (Iterator it = inputs.iterator(); it.hasNext();) {
+      in[i++] = it.next();
+    }
+
+    Object[] args = new Object[bindings.length];
+    for (int k = 0; k < bindings.length; k++) {
+      args[k] = in[bindings[k]];
+    }
+
+    return args;
+  }
+
+  /**
+   * @requires <tt>inputs.size = bindings.length</tt>
+   * @effects creates and returns a new instance using
+   *          <tt>this.constructor</tt> and <tt>inputs</tt> bound as
+   *          arguments
+   */
+  public Object newInstance(List inputs) throws InstantiationException,
+      IllegalAccessException, InvocationTargetException {
+    return constructor.newInstance(getArguments(inputs));
+  }
+
+  public String toString() {
+    return "ConstructorMatch(" + constructor + ")";
+  }
+}
@@ -4,7 +4,6 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.text.DateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
@@ -113,49 +112,18 @@ public class DataManager {
     Object o = null;
     try {
 
-      // create a new object using the default constructor method
-      Constructor[] cons = c.getDeclaredConstructors();
-
-      // find the constructor that has the same signature as the attributes
-      // specified in values
-      Constructor co = null;
-      Class[] paramTypes;
+      // find the constructor whose parameters can be bound to the attributes
+      // specified in values (by @AttrRef names, or else by types)
       List inputObjects = (List) values.values();
-      List sortedInput = new ArrayList();
-      OUTER: for (int i = 0; i < cons.length; i++) {
-        co = cons[i];
-        paramTypes = co.getParameterTypes();
-        if (paramTypes.length == inputObjects.size()) {
-          // match-sort the input objects according to the paramTypes order
-          CONS: for (int k = 0; k < paramTypes.length; k++) {
-            Class type = paramTypes[k];
-            OBJ: for (Iterator oit = inputObjects.iterator(); oit.hasNext();) {
-              Object obj = oit.next();
-              // compare the object type with the parameter type
-              if (type.equals(obj.getClass())
-                  || (type.isPrimitive()
-                      && (type.getName().equalsIgnoreCase(obj.getClass()
-                          .getSimpleName())) || (type.getName().equals("int") && obj
-                      .getClass().getSimpleName().equals("Integer")))) {
-                if (!sortedInput.contains(obj)) { 
-                  // in case some objects have the same type
-                  // TODO: this does not guarantee the correct objects are passed
-                  // in in the case that more than one input objects have the same type
-                  sortedInput.add(obj);
-                  break OBJ;
-                }
-              }
-            } // end OBJ loop
-          } // end CONS loop
-        } // end IF
+      Object[] names = values.keyList().toArray();
+      Class[] types = new Class[names.length];
+      int i = 0;
+      for (Iterator oit = inputObjects.iterator(); oit.hasNext(); i++) {
+        Object obj = oit.next();
+        types[i] = (obj != null) ? obj.getClass() : null;
+      }
 
-        if (paramTypes.length == sortedInput.size()) {
-          // found the constructor
-          break OUTER;
-        }
-        sortedInput.clear();
-        co = null;
-      } // end OUTER for loop
+      ConstructorMatch co = ToolKit.matchConstructor(c, true, names, types);
 
       if (co == null) {
         throw new NotPossibleException(
@@ -164,7 +132,7 @@ public class DataManager {
 
       // System.out.println("constructor: " + co);
 
-      o = co.newInstance(sortedInput.toArray());
+      o = co.newInstance(inputObjects);
     } catch (InstantiationException e) {
       throw new FailureException(
           "DataManager.getObject: failed to create a new instance for class: "
@@ -215,15 +183,16 @@ public class DataManager {
       // specified in values
       Constructor co = null;
       Class[] paramTypes;
-      List inputObjects = (List) values.values();
+      // copy the values once: the values view is a linked list
+      Object[] inputObjects = values.values().toArray();
       OUTER: for (int i = 0; i < cons.length; i++) {
         co = cons[i];
         paramTypes = co.getParameterTypes();
-        if (paramTypes.length == inputObjects.size()) {
+        if (paramTypes.length == inputObjects.length) {
           boolean match = true;
           CONS: for (int k = 0; k < paramTypes.length; k++) {
             Class type = paramTypes[k];
-            Object obj = inputObjects.get(k);
+            Object obj = inputObjects[k];
             // compare the object type with the parameter type
             if (!type.equals(obj.getClass())) {
               if (type.isPrimitive()
@@ -252,7 +221,7 @@ public class DataManager {
 
       // System.out.println("constructor: " + co);
 
-      o = co.newInstance(values.values().toArray());
+      o = co.newInstance(inputObjects);
     } catch (InstantiationException e) {
       throw new FailureException(
           "DataManager.getObject: failed to create a new instance for class: "
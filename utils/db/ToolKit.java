@@ -1,14 +1,21 @@
 package utils.db;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import utils.AttrRef;
 import utils.DomainConstraint;
+import utils.ListMapSchema;
 import utils.NotFoundException;
 import utils.NotPossibleException;
 
@@ -23,6 +30,37 @@ import utils.NotPossibleException;
  * 
  */
 public class ToolKit {
+  /** the primitive types and their wrapper classes */
+  private static final Map PRIMITIVE_WRAPPERS;
+
+  /** the maximum number of constructor matches that are cached */
+  private static final int CONSTRUCTOR_CACHE_SIZE = 1024;
+
+  /**
+   * a cache of the constructor matches, keyed by the class and the shape (i.e.
+   * names and types) of the input values. It is a concurrent map, so that
+   * lookups (the hot path of DataManager) do not contend for a lock; it is
+   * cleared when it reaches CONSTRUCTOR_CACHE_SIZE entries.
+   */
+  private static final ConcurrentHashMap constructorCache = new ConcurrentHashMap();
+  private static final LongAdder constructorHits = new LongAdder();
+  private static final LongAdder constructorMisses = new LongAdder();
+
+  /** a cache of the attribute map schemas of the domain classes */
+  private static final ConcurrentHashMap schemaCache = new ConcurrentHashMap();
+
+  static {
+    PRIMITIVE_WRAPPERS = new HashMap();
+    PRIMITIVE_WRAPPERS.put(boolean.class, Boolean.class);
+    PRIMITIVE_WRAPPERS.put(byte.class, Byte.class);
+    PRIMITIVE_WRAPPERS.put(char.class, Character.class);
+    PRIMITIVE_WRAPPERS.put(short.class, Short.class);
+    PRIMITIVE_WRAPPERS.put(int.class, Integer.class);
+    PRIMITIVE_WRAPPERS.put(long.class, Long.class);
+    PRIMITIVE_WRAPPERS.put(float.class, Float.class);
+    PRIMITIVE_WRAPPERS.put(double.class, Double.class);
+  }
+
   private ToolKit() {
   }
 
@@ -323,48 +361,224 @@ public class ToolKit {
    *          same number of and argument types <code>fields</code>.
    */
   public static Constructor getConstructor(Class cls, List fields) {
-    Constructor c = null;
-    
-    Constructor[] cons = cls.getConstructors();
-
-    List checked = new ArrayList();
-    
-    OUTER: for (int i = 0; i < cons.length; i++) {
-      c = cons[i];
+    Object[] names = new Object[fields.size()];
+    Class[] types = new Class[fields.size()];
+    int i = 0;
+    for (Iterator it = fields.iterator(); it.hasNext(); i++) {
+      Field f = (Field) it.next();
+      names[i] = f.getName();
+      types[i] = f.getType();
+    }
+
+    ConstructorMatch m = matchConstructor(cls, false, names, types);
+
+    return (m != null) ? m.getConstructor() : null;
+  }
+
+  /**
+   * Find a constructor of a class whose parameters can be bound to a sequence
+   * of named and typed input values.
+   * 
+   * @param cls
+   *          a domain class
+   * @param declared
+   *          whether to search the declared constructors of <code>cls</code>
+   *          (<code>true</code>) or only its public ones (<code>false</code>)
+   * @param names
+   *          the attribute names of the input values
+   * @param types
+   *          the types of the input values (an element may be
+   *          <code>null</code> if the value's type is not known)
+   * @requires <code>names.length = types.length</code>
+   * @effects If <code>cls</code> has a constructor with
+   *          <code>names.length</code> parameters that can be bound to the
+   *          inputs returns a {@link ConstructorMatch} recording the
+   *          constructor and the binding, else returns <code>null</code>.
+   *          <p>
+   *          If all parameters of a constructor are annotated with
+   *          {@link AttrRef} then each parameter is bound to the input of the
+   *          same name. Otherwise, the inputs are bucketed by their (boxed)
+   *          type and each parameter takes the next unused input of its
+   *          type, in the order of the inputs.
+   *          <p>
+   *          Results are cached per class and input shape (i.e. names and
+   *          types), so repeated calls with the same shape cost one lookup.
+   */
+  public static ConstructorMatch matchConstructor(Class cls, boolean declared,
+      Object[] names, Class[] types) {
+    List key = new ArrayList(2 + names.length * 2);
+    key.add(cls);
+    key.add(Boolean.valueOf(declared));
+    Collections.addAll(key, names);
+    Collections.addAll(key, types);
+
+    ConstructorMatch m = (ConstructorMatch) constructorCache.get(key);
+    if (m != null) {
+      constructorHits.increment();
+      return m;
+    }
+    constructorMisses.increment();
+
+    Constructor[] cons = declared ? cls.getDeclaredConstructors() : cls
+        .getConstructors();
+
+    // index the inputs by name and by type (computed once for all constructors)
+    Map nameIndex = new HashMap();
+    Map typeBuckets = new HashMap();
+    for (int i = 0; i < names.length; i++) {
+      nameIndex.put(String.valueOf(names[i]), i);
+      if (types[i] != null) {
+        Class t = wrap(types[i]);
+        List bucket = (List) typeBuckets.get(t);
+        if (bucket == null) {
+          bucket = new ArrayList();
+          typeBuckets.put(t, bucket);
+        }
+        bucket.add(i);
+      }
+    }
+
+    int[] bindings;
+    for (int i = 0; i < cons.length; i++) {
+      Constructor c = cons[i];
       Class[] paramTypes = c.getParameterTypes();
-      if (paramTypes.length == fields.size()) {
-        // match-sort the input objects according to the paramTypes order
-        CONS: for (int k = 0; k < paramTypes.length; k++) {
-          Class type = paramTypes[k];
-          OBJ: for (Iterator oit = fields.iterator(); oit.hasNext();) {
-            Object obj = oit.next();
-            if (checked.contains(obj)) {
-              continue;
-            }
-            Class ft =((Field)obj).getType();
-            
-            // compare the object type with the parameter type
-            if (type.equals(ft)
-                || (type.isPrimitive()
-                    && (type.getName().equalsIgnoreCase(ft
-                        .getSimpleName())) || (type.getName().equals("int") && ft.getSimpleName().equals("Integer")))) {
-                checked.add(obj);
-                break OBJ;
-            }
-          } // end OBJ loop
-        } // end CONS loop
-      
-        if (checked.size() == paramTypes.length) {
-          // found constructor
-          break OUTER;
-        } 
-      } // end IF
-      c = null;
-    } // end OUTER
-    
-    return c;
+      if (paramTypes.length != names.length)
+        continue;
+
+      bindings = bindByAttrRef(c, paramTypes, nameIndex, types);
+      if (bindings == null)
+        bindings = bindByType(paramTypes, typeBuckets);
+
+      if (bindings != null) {
+        m = new ConstructorMatch(c, bindings);
+        if (constructorCache.size() >= CONSTRUCTOR_CACHE_SIZE)
+          constructorCache.clear();
+        constructorCache.put(key, m);
+        return m;
+      }
+    }
+
+    return null;
   }
-  
+
+  /**
+   * @effects Returns the ratio of the calls to
+   *          {@link #matchConstructor(Class, boolean, Object[], Class[])} that
+   *          were answered from its cache, or <code>1.0</code> if there has
+   *          been no call.
+   */
+  public static double getConstructorCacheHitRate() {
+    long hits = constructorHits.sum();
+    long requests = hits + constructorMisses.sum();
+    return (requests == 0) ? 1.0 : (double) hits / requests;
+  }
+
+  /**
+   * @effects If every parameter of <code>c</code> is annotated with
+   *          {@link AttrRef} whose value names a distinct input whose type is
+   *          compatible with the parameter type returns the binding of the
+   *          parameters to the inputs, else returns <code>null</code>.
+   */
+  private static int[] bindByAttrRef(Constructor c, Class[] paramTypes,
+      Map nameIndex, Class[] types) {
+    Annotation[][] annotations = c.getParameterAnnotations();
+    int[] bindings = new int[paramTypes.length];
+    boolean[] used = new boolean[types.length];
+
+    for (int k = 0; k < paramTypes.length; k++) {
+      AttrRef ref = null;
+      for (int a = 0; a < annotations[k].length; a++) {
+        if (annotations[k][a] instanceof AttrRef) {
+          ref = (AttrRef) annotations[k][a];
+          break;
+        }
+      }
+      if (ref == null)
+        return null;
+
+      Integer i = (Integer) nameIndex.get(ref.value());
+      if (i == null || used[i])
+        return null;
+
+      Class t = types[i];
+      if (t == null) {
+        // a null value can only be passed to a reference-typed parameter
+        if (paramTypes[k].isPrimitive())
+          return null;
+      } else if (!wrap(paramTypes[k]).isAssignableFrom(wrap(t))) {
+        return null;
+      }
+
+      used[i] = true;
+      bindings[k] = i;
+    }
+
+    return bindings;
+  }
+
+  /**
+   * @effects If each parameter type of <code>paramTypes</code> can take a
+   *          distinct input from <code>typeBuckets</code> (in the order that
+   *          the inputs appear in each bucket) returns the binding of the
+   *          parameters to the inputs, else returns <code>null</code>.
+   */
+  private static int[] bindByType(Class[] paramTypes, Map typeBuckets) {
+    int[] bindings = new int[paramTypes.length];
+    // the next unused position of each bucket
+    Map cursors = new HashMap();
+
+    for (int k = 0; k < paramTypes.length; k++) {
+      Class t = wrap(paramTypes[k]);
+      List bucket = (List) typeBuckets.get(t);
+      Integer pos = (Integer) cursors.get(t);
+      int p = (pos != null) ? pos : 0;
+      if (bucket == null || p >= bucket.size())
+        return null;
+
+      bindings[k] = (Integer) bucket.get(p);
+      cursors.put(t, p + 1);
+    }
+
+    return bindings;
+  }
+
+  /**
+   * @effects If <code>type</code> is a primitive type returns its wrapper
+   *          class, else returns <code>type</code>
+   */
+  static Class wrap(Class type) {
+    if (type.isPrimitive()) {
+      Class w = (Class) PRIMITIVE_WRAPPERS.get(type);
+      if (w != null)
+        return w;
+    }
+
+    return type;
+  }
+
+  /**
+   * @effects Returns the (cached) {@link ListMapSchema} of the attribute maps
+   *          of a class, named after the class and whose keys are the names
+   *          of the attributes returned by {@link #getFields(Class)}, in the
+   *          same order.
+   */
+  public static ListMapSchema getAttributeSchema(Class c) {
+    ListMapSchema schema = (ListMapSchema) schemaCache.get(c);
+    if (schema == null) {
+      List fields = getFields(c);
+      Object[] names = new Object[fields.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = ((Field) fields.get(i)).getName();
+      }
+      schema = new ListMapSchema(c.getSimpleName(), names);
+      ListMapSchema other = (ListMapSchema) schemaCache.putIfAbsent(c, schema);
+      if (other != null)
+        schema = other;
+    }
+
+    return schema;
+  }
+
   /**
    * Return all the attributes of a class.
    * 
@@ -0,0 +1,60 @@
+package utils.fileio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @overview A zero-copy {@link CharSequence} view of a {@link ByteBuffer} that
+ *           holds text in a single-byte encoding (e.g. ASCII or ISO-8859-1):
+ *           the <tt>i</tt>-th character is the <tt>i</tt>-th byte of the
+ *           buffer (as an unsigned value).
+ *
+ *           <p>Sub-sequences share the buffer; only {@link #toString()}
+ *           copies the characters.
+ *
+ * @author dmle
+ */
+public class ByteCharSequence implements CharSequence {
+  private final ByteBuffer bytes;
+  private final int offset;
+  private final int length;
+
+  /**
+   * @effects initialise this as a view of the remaining bytes of
+   *          <tt>bytes</tt>
+   */
+  public ByteCharSequence(ByteBuffer bytes) {
+    this(bytes, bytes.position(), bytes.remaining());
+  }
+
+  private ByteCharSequence(ByteBuffer bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public char charAt(int index) {
+    if (index < 0 || index >= length)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Length: "
+          + length);
+    return (char) (bytes.get(offset + index) & 0xff);
+  }
+
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end)
+      throw new IndexOutOfBoundsException("start: " + start + ", end: " + end
+          + ", length: " + length);
+    return new ByteCharSequence(bytes, offset + start, end - start);
+  }
+
+  public String toString() {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) (bytes.get(offset + i) & 0xff);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,23 @@
+package utils.fileio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @overview Parses a chunk of a text file into a partial result. Used by
+ *           {@link FileHandler#processParallel(String, ChunkParser,
+ *           java.util.function.BinaryOperator)}, which calls a parser on many
+ *           chunks concurrently, so implementations must be thread-safe (e.g.
+ *           stateless).
+ *
+ * @author dmle
+ */
+public interface ChunkParser<R> {
+  /**
+   * @requires the remaining bytes of <tt>chunk</tt> are a sequence of whole
+   *           lines of the file (the last line of the file may have no
+   *           terminator)
+   * @effects returns the result of parsing the remaining bytes of
+   *          <tt>chunk</tt>
+   */
+  R parse(ByteBuffer chunk);
+}
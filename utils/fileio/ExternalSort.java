@@ -0,0 +1,348 @@
+package utils.fileio;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import utils.NotPossibleException;
+
+/**
+ * @overview Sorts the lines of text files that may be much larger than the
+ *           memory, using a fixed memory budget.
+ *
+ *           <p>The input is read in runs that fit in the budget; each run is
+ *           sorted in parallel and, unless it is the only one, spilled to a
+ *           temporary file. The runs are then merged with a heap (in several
+ *           passes if there are more than {@link #MAX_FAN_IN} of them).
+ *           Equal lines keep their input order, and can optionally be
+ *           reduced to one.
+ *
+ * @attributes
+ *  comparator      Comparator<String>
+ *  distinct        boolean
+ *  memoryBudget    long
+ *  charset         Charset
+ *  tempDirectory   File
+ *
+ * @author dmle
+ */
+public class ExternalSort {
+  /** the default memory budget: 64MB */
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  /** the maximum number of runs that are merged at once */
+  public static final int MAX_FAN_IN = 128;
+
+  /** the estimated heap size of a line, other than its characters */
+  private static final int LINE_OVERHEAD = 56;
+
+  private final Comparator<String> comparator;
+  private final boolean distinct;
+  private final long memoryBudget;
+
+  private Charset charset;
+  private File tempDirectory;
+
+  /**
+   * @effects initialise this to sort lines in their natural order, keeping
+   *          duplicates, within the default memory budget
+   */
+  public ExternalSort() {
+    this(null, false, DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * @requires memoryBudget > 0
+   * @effects initialise this to sort lines using <tt>comparator</tt> (or in
+   *          their natural order if it is <tt>null</tt>), removing the lines
+   *          that compare equal to the previous one if <tt>distinct</tt>,
+   *          within about <tt>memoryBudget</tt> bytes of heap
+   */
+  public ExternalSort(Comparator<String> comparator, boolean distinct,
+      long memoryBudget) {
+    if (memoryBudget <= 0)
+      throw new IllegalArgumentException("ExternalSort: invalid memory budget "
+          + memoryBudget);
+
+    this.comparator = (comparator != null) ? comparator
+        : Comparator.<String> naturalOrder();
+    this.distinct = distinct;
+    this.memoryBudget = memoryBudget;
+    this.charset = Charset.defaultCharset();
+    this.tempDirectory = null;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * @effects sets the charset of the input and output files to
+   *          <tt>charset</tt>
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  public File getTempDirectory() {
+    return tempDirectory;
+  }
+
+  /**
+   * @effects sets the directory of the temporary files to <tt>dir</tt> (or
+   *          the default temporary directory if it is <tt>null</tt>)
+   */
+  public void setTempDirectory(File dir) {
+    this.tempDirectory = dir;
+  }
+
+  /**
+   * @effects <pre>
+   *     if input or output is null
+   *      throws NullPointerException
+   *     else if input does not exist OR failed to read input OR
+   *      failed to write output or the temporary files
+   *      throws NotPossibleException
+   *     else
+   *      writes the sorted lines of the file at input to the file at
+   *      output, each terminated by the platform's line separator, and
+   *      returns the number of lines written
+   *      </pre>
+   *      The temporary files are always deleted on return. <tt>output</tt>
+   *      may be the same file as <tt>input</tt>.
+   */
+  public long sort(String input, String output)
+  throws NullPointerException, NotPossibleException {
+    if (input == null || output == null)
+      throw new NullPointerException("ExternalSort.sort: input or output is null");
+
+    final List<File> runs = new ArrayList<File>();
+    try {
+      RunBuilder builder = new RunBuilder(runs);
+      FileHandler.forEachLine(input, charset, builder);
+
+      if (runs.isEmpty()) {
+        // the input fits in memory
+        builder.sortRun();
+        Writer out = newWriter(new File(output), charset);
+        try {
+          return builder.writeRun(out);
+        } finally {
+          out.close();
+        }
+      }
+
+      builder.spill();
+      builder = null;
+
+      // merge the runs, in several passes if there are too many. The runs of
+      // a pass are appended to runs as soon as they are created, so that
+      // they are deleted (below) even if the pass fails
+      while (runs.size() > MAX_FAN_IN) {
+        int n = runs.size();
+        for (int i = 0; i < n; i += MAX_FAN_IN) {
+          List<File> group = new ArrayList<File>(
+              runs.subList(i, Math.min(n, i + MAX_FAN_IN)));
+          File run = newTempFile();
+          runs.add(run);
+          merge(group, run, StandardCharsets.UTF_8);
+          for (File f : group) {
+            f.delete();
+          }
+        }
+        runs.subList(0, n).clear();
+      }
+
+      return merge(runs, new File(output), charset);
+    } catch (IOException e) {
+      throw new NotPossibleException("ExternalSort.sort: failed to sort " + input
+          + " into " + output + ": " + e.getMessage());
+    } finally {
+      for (File f : runs) {
+        f.delete();
+      }
+    }
+  }
+
+  /**
+   * @effects merges the sorted runs <tt>runs</tt> into the file
+   *          <tt>output</tt> encoded in <tt>outCharset</tt> and returns the
+   *          number of lines written
+   */
+  private long merge(List<File> runs, File output, Charset outCharset)
+  throws IOException {
+    int bufferSize = (int) Math.max(1 << 12,
+        Math.min(1 << 20, memoryBudget / (2 * (runs.size() + 1))));
+
+    PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(runs.size(),
+        new Comparator<RunReader>() {
+          public int compare(RunReader a, RunReader b) {
+            int c = comparator.compare(a.line, b.line);
+            // equal lines are taken in the order of their runs
+            return (c != 0) ? c : a.index - b.index;
+          }
+        });
+
+    List<RunReader> readers = new ArrayList<RunReader>(runs.size());
+    Writer out = null;
+    try {
+      for (int i = 0; i < runs.size(); i++) {
+        RunReader r = new RunReader(runs.get(i), i, bufferSize);
+        readers.add(r);
+        if (r.advance())
+          heap.add(r);
+      }
+
+      out = newWriter(output, outCharset);
+      final String linesep = System.getProperty("line.separator");
+      String last = null;
+      long count = 0;
+      while (!heap.isEmpty()) {
+        RunReader r = heap.poll();
+        String line = r.line;
+        if (!distinct || last == null || comparator.compare(last, line) != 0) {
+          out.write(line);
+          out.write(linesep);
+          last = line;
+          count++;
+        }
+        if (r.advance())
+          heap.add(r);
+      }
+
+      return count;
+    } finally {
+      for (RunReader r : readers) {
+        FileHandler.close(r.reader);
+      }
+      if (out != null)
+        out.close();
+    }
+  }
+
+  private File newTempFile() throws IOException {
+    File f = File.createTempFile("sort", ".run", tempDirectory);
+    f.deleteOnExit();
+    return f;
+  }
+
+  private static Writer newWriter(File file, Charset charset) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+        charset), 1 << 16);
+  }
+
+  /**
+   * @overview Collects the lines of the input into runs that fit in the
+   *           memory budget, spilling each full run to a temporary file.
+   */
+  private class RunBuilder implements Consumer<CharSequence> {
+    private final List<File> runs;
+    private String[] lines = new String[1024];
+    private int size;
+    private long bytes;
+
+    RunBuilder(List<File> runs) {
+      this.runs = runs;
+    }
+
+    public void accept(CharSequence line) {
+      if (size == lines.length)
+        lines = Arrays.copyOf(lines, size * 2);
+
+      lines[size++] = line.toString();
+      bytes += LINE_OVERHEAD + 2L * line.length();
+      if (bytes >= memoryBudget)
+        spill();
+    }
+
+    void sortRun() {
+      // stable, so that equal lines keep their input order
+      Arrays.parallelSort(lines, 0, size, comparator);
+    }
+
+    /**
+     * @effects writes the current run (if any) to a new temporary file and
+     *          starts a new run
+     */
+    void spill() {
+      if (size == 0)
+        return;
+
+      sortRun();
+      try {
+        File run = newTempFile();
+        runs.add(run);
+        Writer out = newWriter(run, StandardCharsets.UTF_8);
+        try {
+          writeRun(out);
+        } finally {
+          out.close();
+        }
+      } catch (IOException e) {
+        throw new NotPossibleException("ExternalSort: failed to write a run: "
+            + e.getMessage());
+      }
+
+      Arrays.fill(lines, 0, size, null);
+      size = 0;
+      bytes = 0;
+    }
+
+    /**
+     * @requires the current run is sorted
+     * @effects writes the current run to <tt>out</tt> and returns the number
+     *          of lines written
+     */
+    long writeRun(Writer out) throws IOException {
+      final String linesep = System.getProperty("line.separator");
+      long count = 0;
+      for (int i = 0; i < size; i++) {
+        if (distinct && i > 0 && comparator.compare(lines[i - 1], lines[i]) == 0)
+          continue;
+        out.write(lines[i]);
+        out.write(linesep);
+        count++;
+      }
+
+      return count;
+    }
+  }
+
+  /**
+   * @overview Reads the lines of a sorted run, one at a time.
+   */
+  private static class RunReader {
+    private final BufferedReader reader;
+    private final int index;
+    /** the current line */
+    private String line;
+
+    RunReader(File run, int index, int bufferSize) throws IOException {
+      this.reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(run), StandardCharsets.UTF_8), bufferSize);
+      this.index = index;
+    }
+
+    /**
+     * @effects reads the next line; returns <tt>false</tt> if there is none
+     */
+    boolean advance() throws IOException {
+      line = reader.readLine();
+      return line != null;
+    }
+  }
+}
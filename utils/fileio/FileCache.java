@@ -0,0 +1,218 @@
+package utils.fileio;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import utils.BoundedCache;
+import utils.NotPossibleException;
+
+/**
+ * @overview A cache of the contents of text files, in front of
+ *           {@link FileHandler#getFile(String, Charset)}.
+ *
+ *           <p>The contents are keyed by path and are validated
+ *           against the size and last-modified time of the file, so a file
+ *           that has changed on disk is read again. To avoid looking at the
+ *           file system on every read, a content may be trusted without
+ *           validation for a given interval after it was last validated.
+ *
+ *           <p>The cache is bounded by the total size (in bytes) of the
+ *           contents, least-recently used contents being evicted first.
+ *
+ * @attributes
+ *  maximumBytes      long
+ *  revalidateNanos   long
+ *
+ * @author dmle
+ */
+public class FileCache {
+  /** the default maximum size: 64MB */
+  public static final long DEFAULT_MAXIMUM_BYTES = 64L << 20;
+
+  /** the estimated size of a cached entry, other than its content */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final BoundedCache cache;
+  private final long revalidateNanos;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong staleCount = new AtomicLong();
+
+  /**
+   * @effects initialise this with the default maximum size, validating the
+   *          contents on every read
+   */
+  public FileCache() {
+    this(DEFAULT_MAXIMUM_BYTES, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @requires maximumBytes > 0 /\ revalidateInterval >= 0
+   * @effects initialise this to hold at most <tt>maximumBytes</tt> of
+   *          contents, which are validated against their files at most once
+   *          every <tt>revalidateInterval</tt> (0 means on every read)
+   */
+  public FileCache(long maximumBytes, long revalidateInterval, TimeUnit unit) {
+    if (revalidateInterval < 0)
+      throw new IllegalArgumentException(
+          "FileCache: negative revalidate interval " + revalidateInterval);
+
+    cache = new BoundedCache(maximumBytes, BoundedCache.Policy.LRU,
+        new BoundedCache.Weigher() {
+          public int weigh(Object key, Object value) {
+            // computed in long and clamped, as a content of over 1G chars
+            // would overflow an int
+            long weight = ENTRY_OVERHEAD + 2L * ((Entry) value).content.length();
+            return (int) Math.min(weight, Integer.MAX_VALUE);
+          }
+        });
+    revalidateNanos = unit.toNanos(revalidateInterval);
+  }
+
+  /**
+   * @effects returns <tt>getFile(path, Charset.defaultCharset())</tt>
+   */
+  public String getFile(String path)
+  throws NullPointerException, NotPossibleException {
+    return getFile(path, Charset.defaultCharset());
+  }
+
+  /**
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if the content of path is cached (in charset) and the
+   *      file has not changed since
+   *      return the cached content
+   *     else
+   *      return and cache FileHandler.getFile(path, charset)
+   *      </pre>
+   */
+  public String getFile(String path, Charset charset)
+  throws NullPointerException, NotPossibleException {
+    if (path == null)
+      throw new NullPointerException("FileCache.getFile: path is null");
+
+    Entry e = (Entry) cache.get(path);
+    long now = System.nanoTime();
+
+    if (e != null && e.charset.equals(charset)) {
+      if (now - e.checkedAt < revalidateNanos) {
+        hitCount.incrementAndGet();
+        return e.content;
+      }
+
+      File f = new File(path);
+      if (f.lastModified() == e.lastModified && f.length() == e.size) {
+        e.checkedAt = now;
+        hitCount.incrementAndGet();
+        return e.content;
+      }
+
+      staleCount.incrementAndGet();
+    } else {
+      missCount.incrementAndGet();
+    }
+
+    // read the attributes before the content, so that a change made while
+    // reading is detected by the next validation
+    File f = new File(path);
+    long lastModified = f.lastModified();
+    long size = f.length();
+
+    String content = FileHandler.getFile(path, charset);
+    cache.put(path, new Entry(content, charset, size, lastModified, now));
+
+    return content;
+  }
+
+  /**
+   * @effects removes the content of <tt>path</tt> from this
+   */
+  public void invalidate(String path) {
+    cache.remove(path);
+  }
+
+  /**
+   * @effects removes all the contents from this
+   */
+  public void clear() {
+    cache.clear();
+  }
+
+  /**
+   * @effects returns the number of files cached in this
+   */
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * @effects returns the total (estimated) size in bytes of the contents
+   *          cached in this
+   */
+  public long weight() {
+    return cache.weight();
+  }
+
+  /**
+   * @effects returns the number of reads served from this
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @effects returns the number of reads of files that were not in this
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @effects returns the number of reads of files whose cached contents were
+   *          out of date
+   */
+  public long getStaleCount() {
+    return staleCount.get();
+  }
+
+  /**
+   * @effects returns the number of contents evicted to keep this within its
+   *          maximum size
+   */
+  public long getEvictionCount() {
+    return cache.getEvictionCount();
+  }
+
+  public String toString() {
+    return "FileCache(files=" + size() + ", bytes=" + weight() + ", hits="
+        + getHitCount() + ", misses=" + getMissCount() + ", stale="
+        + getStaleCount() + ", evictions=" + getEvictionCount() + ")";
+  }
+
+  /**
+   * @overview The cached content of a file and the attributes of the file when
+   *           it was read.
+   */
+  private static class Entry {
+    private final String content;
+    private final Charset charset;
+    private final long size;
+    private final long lastModified;
+    /** the time (in nanoseconds) that the file was last validated */
+    private volatile long checkedAt;
+
+    Entry(String content, Charset charset, long size, long lastModified,
+        long checkedAt) {
+      this.content = content;
+      this.charset = charset;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.checkedAt = checkedAt;
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package utils.fileio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import utils.NotPossibleException;
+
+/**
+ * @overview Follows a text file that keeps growing (e.g. a log), like
+ *           <tt>tail -f</tt>: each {@link #poll()} reads only the bytes
+ *           appended since the previous one and passes the complete lines
+ *           among them to a consumer. A line that is not yet terminated is
+ *           kept until it is.
+ *
+ *           <p>If the file is truncated, it is read again from the start. If
+ *           it is rotated (i.e. the path now names a different file), the
+ *           rest of the old file is read first, then the new file is read
+ *           from the start.
+ *
+ *           <p>{@link #follow(long)} polls whenever the directory of the file
+ *           reports a change (using a {@link WatchService}), or at least
+ *           every given interval.
+ *
+ *           <p>The charset must encode <tt>'\n'</tt> as the single byte
+ *           <tt>0x0a</tt> (as ASCII, ISO-8859-1 and UTF-8 do).
+ *
+ * @attributes
+ *  path        String
+ *  charset     Charset
+ *  position    long
+ *
+ * @author dmle
+ */
+public class FileFollower implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Path path;
+  private final Charset charset;
+  private final Consumer<? super String> consumer;
+
+  private FileChannel channel;
+  /** the identity of the file open in channel (may be null) */
+  private Object fileKey;
+  /** the position in the file up to which the bytes have been read */
+  private long position;
+
+  private final ByteBuffer buf;
+  /** the bytes of the line that is not yet terminated */
+  private byte[] carry;
+  private int carrySize;
+
+  private volatile boolean closed;
+  private volatile WatchService watcher;
+
+  /**
+   * @effects initialise this to follow the file at <tt>path</tt> from its
+   *          start, passing its lines decoded in <tt>charset</tt> to
+   *          <tt>consumer</tt>
+   */
+  public FileFollower(String path, Charset charset,
+      Consumer<? super String> consumer) throws NullPointerException {
+    this(path, charset, false, consumer);
+  }
+
+  /**
+   * @effects initialise this to follow the file at <tt>path</tt> from its
+   *          end (if <tt>fromEnd</tt> and the file exists) or its start,
+   *          passing its lines decoded in <tt>charset</tt> to
+   *          <tt>consumer</tt>
+   */
+  public FileFollower(String path, Charset charset, boolean fromEnd,
+      Consumer<? super String> consumer) throws NullPointerException {
+    if (path == null || consumer == null)
+      throw new NullPointerException("FileFollower: path or consumer is null");
+
+    this.path = Paths.get(path);
+    this.charset = charset;
+    this.consumer = consumer;
+    buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    carry = new byte[256];
+
+    if (fromEnd) {
+      try {
+        open();
+        if (channel != null)
+          position = channel.size();
+      } catch (IOException e) {
+        throw new NotPossibleException("FileFollower: failed to open file " + path);
+      }
+    }
+  }
+
+  public String getPath() {
+    return path.toString();
+  }
+
+  /**
+   * @effects returns the position in the file up to which it has been read
+   */
+  public synchronized long getPosition() {
+    return position;
+  }
+
+  /**
+   * @effects <pre>
+   *     if this is closed
+   *      throws NotPossibleException
+   *     else if failed to read the file
+   *      throws NotPossibleException
+   *     else
+   *      reads the bytes appended to the file since the last poll,
+   *      passes the complete lines among them to the consumer and
+   *      returns the number of lines passed
+   *      </pre>
+   *      If the file does not exist (yet), returns 0.
+   */
+  public synchronized int poll() throws NotPossibleException {
+    if (closed)
+      throw new NotPossibleException("FileFollower.poll: closed " + path);
+
+    try {
+      if (channel == null) {
+        open();
+        if (channel == null)
+          return 0;
+      }
+
+      int lines = 0;
+      Object key = currentKey();
+      if (key != null && fileKey != null && !key.equals(fileKey)) {
+        // rotated: finish the old file (its last line is complete) and
+        // continue with the new one
+        lines += read();
+        if (carrySize > 0) {
+          emit(carry, 0, carrySize);
+          carrySize = 0;
+          lines++;
+        }
+        FileHandler.close(channel);
+        channel = null;
+        position = 0;
+        open();
+        if (channel == null)
+          return lines;
+      }
+
+      if (channel.size() < position) {
+        // truncated: start again
+        position = 0;
+        carrySize = 0;
+      }
+
+      return lines + read();
+    } catch (IOException e) {
+      throw new NotPossibleException("FileFollower.poll: failed to read file "
+          + path + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * @effects polls the file until this is closed (by another thread), each
+   *          time the directory of the file reports a change or at least
+   *          every <tt>intervalMillis</tt> ms
+   */
+  public void follow(long intervalMillis) throws NotPossibleException {
+    Path dir = path.toAbsolutePath().getParent();
+    try {
+      watcher = FileSystems.getDefault().newWatchService();
+      dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      // fall back to polling only
+      watcher = null;
+    }
+
+    try {
+      while (!closed) {
+        poll();
+
+        WatchService w = watcher;
+        if (w != null) {
+          WatchKey key = w.poll(intervalMillis, TimeUnit.MILLISECONDS);
+          if (key != null) {
+            key.pollEvents();
+            key.reset();
+          }
+        } else {
+          Thread.sleep(intervalMillis);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // closed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (NotPossibleException e) {
+      if (!closed)
+        throw e;
+    } finally {
+      FileHandler.close(watcher);
+    }
+  }
+
+  /**
+   * @effects stops following the file and closes it. A line that is not yet
+   *          terminated is discarded.
+   */
+  public void close() {
+    closed = true;
+    FileHandler.close(watcher);
+    synchronized (this) {
+      FileHandler.close(channel);
+      channel = null;
+    }
+  }
+
+  /**
+   * @effects opens the file if it exists
+   */
+  private void open() throws IOException {
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      fileKey = currentKey();
+    } catch (NoSuchFileException e) {
+      channel = null;
+    }
+  }
+
+  /**
+   * @effects returns the identity of the file that path names now, or
+   *          <tt>null</tt> if it does not exist or has no identity
+   */
+  private Object currentKey() {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @effects reads the bytes of the open file from position to its end,
+   *          passes the complete lines to the consumer and returns their
+   *          number
+   */
+  private int read() throws IOException {
+    int lines = 0;
+    while (true) {
+      buf.clear();
+      int n = channel.read(buf, position);
+      if (n <= 0)
+        break;
+      position += n;
+
+      buf.flip();
+      int start = 0;
+      for (int i = 0; i < n; i++) {
+        if (buf.get(i) == '\n') {
+          appendCarry(start, i);
+          emit(carry, 0, carrySize);
+          carrySize = 0;
+          lines++;
+          start = i + 1;
+        }
+      }
+      appendCarry(start, n);
+    }
+
+    return lines;
+  }
+
+  /**
+   * @effects appends <tt>buf[start..end)</tt> to the carried line
+   */
+  private void appendCarry(int start, int end) {
+    int n = end - start;
+    if (carrySize + n > carry.length)
+      carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carrySize + n));
+    ByteBuffer src = buf.duplicate();
+    src.position(start).limit(end);
+    src.get(carry, carrySize, n);
+    carrySize += n;
+  }
+
+  /**
+   * @effects passes the line <tt>bytes[off..off+len)</tt>, without a
+   *          trailing <tt>'\r'</tt>, to the consumer
+   */
+  private void emit(byte[] bytes, int off, int len) {
+    if (len > 0 && bytes[off + len - 1] == '\r')
+      len--;
+    consumer.accept(new String(bytes, off, len, charset));
+  }
+
+  public synchronized String toString() {
+    return "FileFollower(" + path + ", position=" + position + ")";
+  }
+}
@@ -1,48 +1,511 @@
 package utils.fileio;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import utils.NotPossibleException;
 
 public class FileHandler {
+  /** the bounds of the default chunk size of {@link #processParallel(String, ChunkParser, BinaryOperator)} */
+  private static final long MIN_CHUNK_SIZE = 1L << 20;
+  private static final long MAX_CHUNK_SIZE = 64L << 20;
+
   /**
    * @requires <tt>path is a text file</tt>
    * @effects <pre>
    *     if path is null
    *      throws NullPointerException
-   *     else if path does not exist OR 
-   *      failed to read file at the specified path 
-   *      throws NotPossibleException 
-   *     else 
-   *      return a string containing the content of the file 
+   *     else if path does not exist OR
+   *      failed to read file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      return a string containing the content of the file
    *      at the specified path
-   *      </pre> 
+   *      </pre>
+   *      Each line of the result is terminated by the platform's line separator.
+   */
+  public static String getFile(String path)
+  throws NullPointerException, NotPossibleException {
+    return getFile(path, Charset.defaultCharset());
+  }
+
+  /**
+   * @requires <tt>path is a text file encoded in charset</tt>
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to read file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      return a string containing the content of the file
+   *      at the specified path, each line of which is terminated
+   *      by the platform's line separator
+   *      </pre>
+   *      The file is mapped into memory and decoded once into a
+   *      pre-sized buffer; the line terminators are only rewritten if
+   *      they differ from the platform's line separator.
    */
-  public static String getFile(String path) 
+  public static String getFile(String path, Charset charset)
   throws NullPointerException, NotPossibleException {
-    
     if (path == null)
       throw new NullPointerException("FileHandler.getFile: path is null");
-    
+
     final String linesep = System.getProperty("line.separator");
 
+    CharBuffer content = getContent(path, charset);
+    return normaliseLines(content, linesep);
+  }
+
+  /**
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to map the file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      return a read-only buffer that maps the content
+   *      of the file at the specified path
+   *      </pre>
+   *      No data is copied: the bytes are paged in from the file as
+   *      they are read. The file is closed on return; the mapping
+   *      remains valid until the buffer is garbage-collected.
+   */
+  public static MappedByteBuffer mapFile(String path)
+  throws NullPointerException, NotPossibleException {
+    if (path == null)
+      throw new NullPointerException("FileHandler.mapFile: path is null");
+
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(new File(path), "r");
+      FileChannel channel = file.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+        throw new NotPossibleException("FileHandler.mapFile: file too large to map "
+            + path + " (" + size + " bytes)");
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (IOException e) {
+      throw new NotPossibleException("FileHandler.mapFile: failed to map file " + path);
+    } finally {
+      close(file);
+    }
+  }
+
+  /**
+   * @requires <tt>path is a text file encoded in charset</tt>
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to read file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      return a buffer containing the characters of the file
+   *      at the specified path (with the original line terminators)
+   *      </pre>
+   *      The file is mapped into memory and decoded directly into a buffer
+   *      that is sized for the whole file, i.e. the characters are copied
+   *      exactly once.
+   */
+  public static CharBuffer getContent(String path, Charset charset)
+  throws NullPointerException, NotPossibleException {
+    ByteBuffer bytes = mapFile(path);
+
+    CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    try {
+      CharBuffer chars = CharBuffer.allocate(
+          (int) Math.min(Integer.MAX_VALUE - 8,
+              (long) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte())));
+      CoderResult result = decoder.decode(bytes, chars, true);
+      if (!result.isUnderflow())
+        result.throwException();
+      result = decoder.flush(chars);
+      if (!result.isUnderflow())
+        result.throwException();
+      chars.flip();
+      return chars;
+    } catch (CharacterCodingException e) {
+      throw new NotPossibleException("FileHandler.getContent: failed to decode file " + path);
+    }
+  }
+
+  /**
+   * @requires <tt>path is a text file in a single-byte encoding
+   *  (e.g. ASCII or ISO-8859-1)</tt>
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to map the file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      return a character sequence view of the content
+   *      of the file at the specified path
+   *      </pre>
+   *      This is a zero-copy view: each character is read from the mapped
+   *      file when it is accessed.
+   */
+  public static CharSequence getCharSequence(String path)
+  throws NullPointerException, NotPossibleException {
+    return new ByteCharSequence(mapFile(path));
+  }
+
+  /**
+   * @requires <tt>path is a text file encoded in charset</tt>
+   * @effects <pre>
+   *     if path or consumer is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to read file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      pass each line of the file at the specified path
+   *      (without its terminator) to consumer, in order
+   *      </pre>
+   *      Lines are passed on as soon as they are read. The line passed to
+   *      <tt>consumer</tt> is a buffer that is reused for the next line, so
+   *      the consumer must copy it (e.g. using <tt>toString()</tt>) if it is
+   *      to be kept. Memory use is independent of the file size, and the file
+   *      is always closed on return.
+   */
+  public static void forEachLine(String path, Charset charset,
+      Consumer<? super CharSequence> consumer)
+  throws NullPointerException, NotPossibleException {
+    if (path == null || consumer == null)
+      throw new NullPointerException("FileHandler.forEachLine: path or consumer is null");
+
+    LineReader reader = null;
     try {
-      BufferedReader reader = new BufferedReader(
-          new FileReader(new File(path)));
-      
-      // read file content
-      StringBuffer docBuffer = new StringBuffer();
-      String line = reader.readLine();
-      while (line != null) {
-        docBuffer.append(line).append(linesep);
-        line = reader.readLine();
-      }
-      return docBuffer.toString();
+      reader = new LineReader(openChannel(path), charset);
+      CharSequence line;
+      while ((line = reader.readLine()) != null) {
+        consumer.accept(line);
+      }
     } catch (IOException e) {
-      throw new NotPossibleException("FileHandler.getFile: failed to read file " + path);
+      throw new NotPossibleException("FileHandler.forEachLine: failed to read file " + path);
+    } finally {
+      close(reader);
+    }
+  }
+
+  /**
+   * @effects same as {@link #forEachLine(String, Charset, Consumer)} using the
+   *          platform's default charset
+   */
+  public static void forEachLine(String path,
+      Consumer<? super CharSequence> consumer)
+  throws NullPointerException, NotPossibleException {
+    forEachLine(path, Charset.defaultCharset(), consumer);
+  }
+
+  /**
+   * @requires <tt>path is a text file encoded in charset</tt>
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to open file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      return a stream of the lines of the file at the
+   *      specified path (without their terminators)
+   *      </pre>
+   *      The stream is lazy: each line is read when the stream needs it. The
+   *      file is closed when the stream has been consumed or is closed (use
+   *      the stream in a <tt>try</tt>-with-resources statement if it may not
+   *      be consumed entirely). A read error while the stream is consumed is
+   *      thrown as <tt>NotPossibleException</tt>.
+   */
+  public static Stream<String> lines(final String path, Charset charset)
+  throws NullPointerException, NotPossibleException {
+    if (path == null)
+      throw new NullPointerException("FileHandler.lines: path is null");
+
+    final LineReader reader = new LineReader(openChannel(path), charset);
+
+    Spliterator<String> lines = new Spliterators.AbstractSpliterator<String>(
+        Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+      public boolean tryAdvance(Consumer<? super String> action) {
+        CharSequence line;
+        try {
+          line = reader.readLine();
+        } catch (IOException e) {
+          close(reader);
+          throw new NotPossibleException("FileHandler.lines: failed to read file " + path);
+        }
+
+        if (line == null) {
+          close(reader);
+          return false;
+        }
+
+        action.accept(line.toString());
+        return true;
+      }
+    };
+
+    return StreamSupport.stream(lines, false).onClose(new Runnable() {
+      public void run() {
+        close(reader);
+      }
+    });
+  }
+
+  /**
+   * @effects same as {@link #lines(String, Charset)} using the platform's
+   *          default charset
+   */
+  public static Stream<String> lines(String path)
+  throws NullPointerException, NotPossibleException {
+    return lines(path, Charset.defaultCharset());
+  }
+
+  /**
+   * @requires <tt>path is a text file</tt> /\ <tt>combiner</tt> is associative
+   * @effects <pre>
+   *     if path, parser or combiner is null
+   *      throws NullPointerException
+   *     else if path does not exist OR
+   *      failed to read file at the specified path
+   *      throws NotPossibleException
+   *     else
+   *      split the file at the specified path into chunks of whole lines,
+   *      parse the chunks in parallel using parser and return the results
+   *      combined (in file order) using combiner
+   *      </pre>
+   *      Each chunk is mapped into memory separately, so files larger than
+   *      2GB are supported. The chunks are parsed by the tasks of the common
+   *      fork-join pool.
+   */
+  public static <R> R processParallel(String path, ChunkParser<R> parser,
+      BinaryOperator<R> combiner)
+  throws NullPointerException, NotPossibleException {
+    return processParallel(path, parser, combiner, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * @requires <tt>path is a text file</tt> /\ <tt>combiner</tt> is associative
+   * @effects same as {@link #processParallel(String, ChunkParser, BinaryOperator)}
+   *          but uses the tasks of <tt>pool</tt> and chunks of about
+   *          <tt>chunkSize</tt> bytes (or a size chosen from the file size and
+   *          the parallelism of <tt>pool</tt> if <tt>chunkSize <= 0</tt>)
+   */
+  public static <R> R processParallel(String path, final ChunkParser<R> parser,
+      final BinaryOperator<R> combiner, ForkJoinPool pool, long chunkSize)
+  throws NullPointerException, NotPossibleException {
+    if (path == null || parser == null || combiner == null)
+      throw new NullPointerException("FileHandler.processParallel: null argument");
+
+    final FileChannel channel = openChannel(path);
+    try {
+      long size = channel.size();
+      if (chunkSize <= 0) {
+        // enough chunks to balance the load, but not too small to be efficient
+        chunkSize = Math.max(MIN_CHUNK_SIZE,
+            Math.min(MAX_CHUNK_SIZE, size / (4L * pool.getParallelism())));
+      }
+      chunkSize = Math.min(chunkSize, Integer.MAX_VALUE);
+
+      long[] bounds = splitLines(channel, size, chunkSize);
+      return pool.invoke(new ChunkTask<R>(channel, bounds, 0, bounds.length - 1,
+          parser, combiner));
+    } catch (IOException e) {
+      throw new NotPossibleException("FileHandler.processParallel: failed to read file " + path);
+    } finally {
+      close(channel);
+    }
+  }
+
+  /**
+   * @effects returns the boundaries <tt>b[0] = 0 < b[1] < ... < b[n] = size</tt>
+   *          of the chunks of <tt>channel</tt>, each of which contains whole
+   *          lines and is about <tt>chunkSize</tt> bytes long (longer if it
+   *          contains a longer line)
+   */
+  private static long[] splitLines(FileChannel channel, long size,
+      long chunkSize) throws IOException {
+    List<Long> bounds = new ArrayList<Long>();
+    bounds.add(0L);
+
+    ByteBuffer probe = ByteBuffer.allocate(4096);
+    long pos = 0;
+    while (pos < size) {
+      long end = pos + chunkSize;
+      if (end >= size) {
+        end = size;
+      } else {
+        // move end to just after the next line terminator
+        end = findLineEnd(channel, end - 1, size, probe);
+      }
+      bounds.add(end);
+      pos = end;
+    }
+
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i);
+    }
+
+    // an empty file has one empty chunk
+    return (result.length > 1) ? result : new long[] { 0, 0 };
+  }
+
+  /**
+   * @effects returns the position just after the first <tt>'\n'</tt> at or
+   *          after <tt>from</tt> in <tt>channel</tt>, or <tt>size</tt> if
+   *          there is none
+   */
+  private static long findLineEnd(FileChannel channel, long from, long size,
+      ByteBuffer probe) throws IOException {
+    long pos = from;
+    while (pos < size) {
+      probe.clear();
+      int n = channel.read(probe, pos);
+      if (n <= 0)
+        break;
+      for (int i = 0; i < n; i++) {
+        if (probe.get(i) == '\n')
+          return pos + i + 1;
+      }
+      pos += n;
+    }
+
+    return size;
+  }
+
+  /**
+   * @overview A fork-join task that parses the chunks <tt>[lo, hi)</tt> of a
+   *           file, by splitting them in halves until there is only one.
+   */
+  private static class ChunkTask<R> extends RecursiveTask<R> {
+    private final FileChannel channel;
+    private final long[] bounds;
+    private final int lo;
+    private final int hi;
+    private final ChunkParser<R> parser;
+    private final BinaryOperator<R> combiner;
+
+    ChunkTask(FileChannel channel, long[] bounds, int lo, int hi,
+        ChunkParser<R> parser, BinaryOperator<R> combiner) {
+      this.channel = channel;
+      this.bounds = bounds;
+      this.lo = lo;
+      this.hi = hi;
+      this.parser = parser;
+      this.combiner = combiner;
+    }
+
+    protected R compute() {
+      if (hi - lo == 1) {
+        long start = bounds[lo];
+        try {
+          ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start,
+              bounds[hi] - start);
+          return parser.parse(chunk);
+        } catch (IOException e) {
+          throw new NotPossibleException(
+              "FileHandler.processParallel: failed to map chunk at " + start);
+        }
+      }
+
+      int mid = (lo + hi) >>> 1;
+      ChunkTask<R> left = new ChunkTask<R>(channel, bounds, lo, mid, parser, combiner);
+      ChunkTask<R> right = new ChunkTask<R>(channel, bounds, mid, hi, parser, combiner);
+      left.fork();
+      R r = right.compute();
+      return combiner.apply(left.join(), r);
+    }
+  }
+
+  /**
+   * @effects opens and returns a read-only channel of the file at
+   *          <tt>path</tt>; throws <tt>NotPossibleException</tt> if failed
+   */
+  static FileChannel openChannel(String path) throws NotPossibleException {
+    try {
+      return FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new NotPossibleException("FileHandler: failed to open file " + path);
+    }
+  }
+
+  /**
+   * @effects returns the content of <tt>chars</tt> as a string, in which each
+   *          line (as defined by <tt>BufferedReader.readLine</tt>) is
+   *          terminated by <tt>linesep</tt>
+   */
+  private static String normaliseLines(CharBuffer chars, String linesep) {
+    final int n = chars.remaining();
+    if (n == 0)
+      return "";
+
+    // fast path: the content is already in the required form
+    if (linesep.equals("\n") && chars.get(n - 1) == '\n') {
+      boolean hasCR = false;
+      for (int i = 0; i < n; i++) {
+        if (chars.get(i) == '\r') {
+          hasCR = true;
+          break;
+        }
+      }
+      if (!hasCR)
+        return chars.toString();
+    }
+
+    StringBuilder docBuffer = new StringBuilder(n + n / 16 + linesep.length());
+    int start = 0;
+    for (int i = 0; i < n; i++) {
+      char c = chars.get(i);
+      if (c == '\n' || c == '\r') {
+        docBuffer.append(chars, start, i).append(linesep);
+        if (c == '\r' && i + 1 < n && chars.get(i + 1) == '\n')
+          i++;
+        start = i + 1;
+      }
+    }
+    if (start < n)
+      docBuffer.append(chars, start, n).append(linesep);
+
+    return docBuffer.toString();
+  }
+
+  /**
+   * @effects closes <tt>file</tt> (if it is not <tt>null</tt>), ignoring errors
+   */
+  static void close(Closeable file) {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        // ignore
+      }
     }
   }
 }
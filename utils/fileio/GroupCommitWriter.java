@@ -0,0 +1,328 @@
+package utils.fileio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import utils.NotPossibleException;
+
+/**
+ * @overview A durable file writer that batches the records written by many
+ *           threads and makes them durable with a single <tt>fsync</tt> per
+ *           batch (group commit).
+ *
+ *           <p>Records are copied into one of two large direct buffers. A
+ *           background thread swaps the buffers and writes the full one to
+ *           the file (with a {@link FileChannel}) followed by
+ *           {@link FileChannel#force(boolean)}, when the buffered records
+ *           reach <tt>commitBytes</tt> bytes or the oldest of them is
+ *           <tt>commitMillis</tt> old, whichever comes first. Writers are only
+ *           blocked while both buffers are full.
+ *
+ *           <p>A record is durable at most about <tt>commitMillis</tt> after
+ *           it was appended (the loss window on a crash). A caller that needs
+ *           a record to be durable before it goes on calls {@link #sync(long)}
+ *           with the position returned by {@link #append(byte[])}, which
+ *           starts a commit at once.
+ *
+ * @attributes
+ *  path            String
+ *  bufferSize      int
+ *  commitMillis    long
+ *  commitBytes     long
+ *
+ * @author dmle
+ */
+public class GroupCommitWriter implements Closeable {
+  /** the default buffer size: 1MB */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+  /** the default maximum age of an uncommitted record: 10ms */
+  public static final long DEFAULT_COMMIT_MILLIS = 10;
+
+  private final String path;
+  private final FileChannel channel;
+  private final long commitNanos;
+  private final long commitBytes;
+
+  /** the buffer that records are appended to */
+  private ByteBuffer active;
+  /** the buffer being written by the committer */
+  private ByteBuffer committing;
+
+  /** the file position after the last appended record */
+  private long appended;
+  /** the file position up to which the records are durable */
+  private long durable;
+  /** the file position up to which a commit has been requested */
+  private long requested;
+  /** the time (System.nanoTime) at which the oldest buffered record was appended */
+  private long oldest;
+
+  private boolean closed;
+  /** the error that stopped the committer, or null */
+  private IOException failure;
+
+  private final Thread committer;
+
+  /**
+   * @effects initialise this to append to the file at <tt>path</tt> with
+   *          the default buffer size, committing every
+   *          {@link #DEFAULT_COMMIT_MILLIS} ms or when a buffer is half full
+   */
+  public GroupCommitWriter(String path)
+  throws NullPointerException, NotPossibleException {
+    this(path, DEFAULT_BUFFER_SIZE, DEFAULT_COMMIT_MILLIS, DEFAULT_BUFFER_SIZE / 2);
+  }
+
+  /**
+   * @requires bufferSize > 0 /\ commitMillis > 0 /\ 0 < commitBytes <= bufferSize
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if failed to open the file at path
+   *      throws NotPossibleException
+   *     else
+   *      initialise this to append to the file at path (creating it if
+   *      necessary), using two buffers of bufferSize bytes, and
+   *      committing every commitMillis ms or commitBytes bytes
+   *      </pre>
+   */
+  public GroupCommitWriter(String path, int bufferSize, long commitMillis,
+      long commitBytes) throws NullPointerException, NotPossibleException {
+    if (path == null)
+      throw new NullPointerException("GroupCommitWriter: path is null");
+    if (bufferSize <= 0 || commitMillis <= 0 || commitBytes <= 0
+        || commitBytes > bufferSize)
+      throw new IllegalArgumentException("GroupCommitWriter: invalid buffer size "
+          + bufferSize + " or commit interval " + commitMillis + "ms/"
+          + commitBytes + " bytes");
+
+    this.path = path;
+    try {
+      channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      appended = durable = requested = channel.size();
+    } catch (IOException e) {
+      throw new NotPossibleException("GroupCommitWriter: failed to open file " + path);
+    }
+
+    this.commitNanos = commitMillis * 1000000L;
+    this.commitBytes = commitBytes;
+    active = ByteBuffer.allocateDirect(bufferSize);
+    committing = ByteBuffer.allocateDirect(bufferSize);
+
+    committer = new Thread(new Runnable() {
+      public void run() {
+        commitLoop();
+      }
+    }, "GroupCommitWriter-" + path);
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @effects <pre>
+   *     if this is closed OR a previous commit failed
+   *      throws NotPossibleException
+   *     else
+   *      appends record to the file and returns the file position just
+   *      after it, to be passed to sync(long)
+   *      </pre>
+   *      The record is written as a whole, i.e. it is not interleaved with
+   *      the records of other threads (unless it is larger than the buffer
+   *      size, in which case it is written in pieces).
+   */
+  public long append(byte[] record) throws NotPossibleException {
+    return append(ByteBuffer.wrap(record));
+  }
+
+  /**
+   * @effects appends the string <tt>s</tt> encoded in <tt>charset</tt>, as in
+   *          {@link #append(byte[])}
+   */
+  public long append(String s, Charset charset) throws NotPossibleException {
+    return append(s.getBytes(charset));
+  }
+
+  /**
+   * @effects appends the remaining bytes of <tt>record</tt>, as in
+   *          {@link #append(byte[])}
+   */
+  public synchronized long append(ByteBuffer record) throws NotPossibleException {
+    boolean whole = record.remaining() <= active.capacity();
+    while (record.hasRemaining()) {
+      check();
+
+      if (whole ? active.remaining() < record.remaining() : !active.hasRemaining()) {
+        // wait for the committer to swap the buffers
+        requested = Math.max(requested, appended);
+        notifyAll();
+        await();
+        continue;
+      }
+
+      if (active.position() == 0)
+        oldest = System.nanoTime();
+
+      int n = Math.min(active.remaining(), record.remaining());
+      ByteBuffer src = record.duplicate();
+      src.limit(src.position() + n);
+      active.put(src);
+      record.position(record.position() + n);
+      appended += n;
+
+      if (active.position() >= commitBytes)
+        notifyAll();
+    }
+
+    return appended;
+  }
+
+  /**
+   * @effects <pre>
+   *     if this is closed or a commit failed before position was durable
+   *      throws NotPossibleException
+   *     else
+   *      waits until the records up to position are durable
+   *      </pre>
+   */
+  public synchronized void sync(long position) throws NotPossibleException {
+    while (durable < position) {
+      check();
+      if (requested < position) {
+        requested = position;
+        notifyAll();
+      }
+      await();
+    }
+  }
+
+  /**
+   * @effects waits until all the records appended so far are durable
+   */
+  public synchronized void sync() throws NotPossibleException {
+    sync(appended);
+  }
+
+  /**
+   * @effects returns the file position up to which the records are durable
+   */
+  public synchronized long getDurablePosition() {
+    return durable;
+  }
+
+  /**
+   * @effects commits the records appended so far and closes this
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+      notifyAll();
+    }
+
+    try {
+      committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    channel.close();
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * @effects throws NotPossibleException if this is closed or failed
+   */
+  private void check() throws NotPossibleException {
+    if (failure != null)
+      throw new NotPossibleException("GroupCommitWriter: failed to write file "
+          + path + ": " + failure.getMessage());
+    if (closed)
+      throw new NotPossibleException("GroupCommitWriter: closed " + path);
+  }
+
+  private void await() throws NotPossibleException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NotPossibleException("GroupCommitWriter: interrupted");
+    }
+  }
+
+  /**
+   * @effects the body of the committer thread: repeatedly waits for a commit
+   *          to be due, swaps the buffers and writes and forces the full one
+   */
+  private void commitLoop() {
+    while (true) {
+      long end;
+      synchronized (this) {
+        while (true) {
+          boolean pending = active.position() > 0;
+          if (!pending && closed)
+            return;
+          if (pending && (closed || requested > durable
+              || active.position() >= commitBytes))
+            break;
+
+          try {
+            if (pending) {
+              long remaining = commitNanos - (System.nanoTime() - oldest);
+              if (remaining <= 0)
+                break;
+              wait(remaining / 1000000L, (int) (remaining % 1000000L));
+            } else {
+              wait();
+            }
+          } catch (InterruptedException e) {
+            // only stops when closed
+          }
+        }
+
+        ByteBuffer full = active;
+        active = committing;
+        committing = full;
+        end = appended;
+        // writers may be waiting for space
+        notifyAll();
+      }
+
+      try {
+        committing.flip();
+        while (committing.hasRemaining()) {
+          channel.write(committing);
+        }
+        committing.clear();
+        channel.force(false);
+      } catch (IOException e) {
+        synchronized (this) {
+          failure = e;
+          notifyAll();
+        }
+        return;
+      }
+
+      synchronized (this) {
+        durable = end;
+        notifyAll();
+      }
+    }
+  }
+
+  public synchronized String toString() {
+    return "GroupCommitWriter(" + path + ", appended=" + appended
+        + ", durable=" + durable + ")";
+  }
+}
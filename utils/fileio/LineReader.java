@@ -0,0 +1,151 @@
+package utils.fileio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * @overview Reads the lines of a channel one at a time, using fixed-size byte
+ *           and character buffers, so that memory use does not depend on the
+ *           size of the input. A line is terminated by <tt>'\n'</tt>,
+ *           <tt>'\r'</tt> or <tt>"\r\n"</tt> (as in
+ *           <tt>BufferedReader.readLine</tt>).
+ *
+ *           <p>The line returned by {@link #readLine()} is a buffer that is
+ *           reused by the next call.
+ *
+ * @author dmle
+ */
+class LineReader implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final CharsetDecoder decoder;
+  private final ByteBuffer bytes;
+  /** the decoded characters, in read mode */
+  private final CharBuffer chars;
+  /** the current line */
+  private CharBuffer line;
+
+  private boolean endOfInput;
+  private boolean flushed;
+  /** whether the previous line ended with '\r', so that a following '\n' is skipped */
+  private boolean skipLF;
+
+  LineReader(ReadableByteChannel channel, Charset charset) {
+    this.channel = channel;
+    decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    chars = CharBuffer.allocate(BUFFER_SIZE);
+    chars.flip();
+    line = CharBuffer.allocate(256);
+  }
+
+  /**
+   * @effects if there is no more input returns <tt>null</tt>, else reads and
+   *          returns the next line (without its terminator). The result is
+   *          only valid until the next call.
+   */
+  CharSequence readLine() throws IOException {
+    line.clear();
+    boolean any = false;
+
+    while (true) {
+      if (!chars.hasRemaining()) {
+        if (!fill()) {
+          line.flip();
+          return any ? line : null;
+        }
+      }
+
+      if (skipLF) {
+        skipLF = false;
+        if (chars.get(chars.position()) == '\n') {
+          chars.get();
+          continue;
+        }
+      }
+
+      any = true;
+      int start = chars.position();
+      int limit = chars.limit();
+      for (int i = start; i < limit; i++) {
+        char c = chars.get(i);
+        if (c == '\n' || c == '\r') {
+          append(start, i);
+          chars.position(i + 1);
+          skipLF = (c == '\r');
+          line.flip();
+          return line;
+        }
+      }
+
+      // no terminator in the buffered characters: keep them and read more
+      append(start, limit);
+      chars.position(limit);
+    }
+  }
+
+  /**
+   * @effects appends <tt>chars[start..end)</tt> to the current line
+   */
+  private void append(int start, int end) {
+    int n = end - start;
+    if (line.remaining() < n) {
+      CharBuffer bigger = CharBuffer.allocate(Math.max(line.capacity() * 2,
+          line.position() + n));
+      line.flip();
+      bigger.put(line);
+      line = bigger;
+    }
+
+    CharBuffer src = chars.duplicate();
+    src.position(start).limit(end);
+    line.put(src);
+  }
+
+  /**
+   * @effects decodes more characters into <tt>chars</tt>; returns
+   *          <tt>false</tt> if there are none left
+   */
+  private boolean fill() throws IOException {
+    chars.clear();
+    while (chars.position() == 0 && !flushed) {
+      if (!endOfInput) {
+        int n = channel.read(bytes);
+        if (n < 0)
+          endOfInput = true;
+      }
+
+      bytes.flip();
+      CoderResult result = decoder.decode(bytes, chars, endOfInput);
+      bytes.compact();
+      if (result.isError())
+        result.throwException();
+
+      if (endOfInput && bytes.position() == 0) {
+        // all the input has been decoded
+        if (!flushed) {
+          decoder.flush(chars);
+          flushed = true;
+        }
+        break;
+      }
+    }
+    chars.flip();
+
+    return chars.hasRemaining();
+  }
+
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,421 @@
+package utils.fileio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import utils.NotPossibleException;
+
+/**
+ * @overview A search engine that finds all the occurrences of a set of
+ *           literal patterns in text files, in a single pass over each file
+ *           however many patterns there are.
+ *
+ *           <p>The patterns are compiled into an Aho-Corasick automaton over
+ *           the bytes of their encoding, stored as a dense transition table
+ *           (one row per state, one column per class of bytes that occur in
+ *           the patterns). Files are memory-mapped and scanned byte by byte;
+ *           while the automaton is in its start state, the scan skips ahead to
+ *           the next byte that can begin a pattern, testing 8 bytes at a time
+ *           when there are only a few such bytes.
+ *
+ *           <p>A search engine is immutable, so one can be used by many
+ *           threads at once (e.g. to search many files in parallel).
+ *
+ * @attributes
+ *  patterns    List<String>
+ *  charset     Charset
+ *
+ * @author dmle
+ */
+public class MultiSearch {
+  /** the maximum number of first bytes tested 8 bytes at a time */
+  private static final int MAX_SWAR_BYTES = 3;
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGHS = 0x8080808080808080L;
+
+  /** the size of the windows in which large files are mapped */
+  private static final long WINDOW_SIZE = 1L << 30;
+
+  private final List<String> patterns;
+  private final Charset charset;
+  /** the encoded length of each pattern */
+  private final int[] lengths;
+  /** the number of '\n' in each pattern, except at its last byte */
+  private final int[] newlines;
+
+  /** maps each byte to its class */
+  private final int[] classes;
+  private final int classCount;
+  /** the transitions: delta[s * classCount + c] */
+  private final int[] delta;
+  /** the patterns (ids) that end at each state, longest first, or null */
+  private final int[][] outputs;
+
+  /** the bytes that can begin a pattern */
+  private final boolean[] first;
+  /** each byte that can begin a pattern repeated 8 times, or null */
+  private final long[] firstMasks;
+
+  /**
+   * @effects initialise this to search for <tt>patterns</tt> encoded in the
+   *          platform's default charset
+   */
+  public MultiSearch(List<String> patterns)
+  throws NullPointerException, IllegalArgumentException {
+    this(patterns, Charset.defaultCharset());
+  }
+
+  /**
+   * @effects <pre>
+   *     if patterns is empty or contains an empty string
+   *      throws IllegalArgumentException
+   *     else
+   *      initialise this to search for patterns encoded in charset
+   *      </pre>
+   */
+  public MultiSearch(List<String> patterns, Charset charset)
+  throws NullPointerException, IllegalArgumentException {
+    if (patterns.isEmpty())
+      throw new IllegalArgumentException("MultiSearch: no patterns");
+
+    this.patterns = new ArrayList<String>(patterns);
+    this.charset = charset;
+
+    int n = patterns.size();
+    byte[][] encoded = new byte[n][];
+    lengths = new int[n];
+    newlines = new int[n];
+    int totalLength = 0;
+    for (int i = 0; i < n; i++) {
+      byte[] p = patterns.get(i).getBytes(charset);
+      if (p.length == 0)
+        throw new IllegalArgumentException("MultiSearch: empty pattern " + i);
+      encoded[i] = p;
+      lengths[i] = p.length;
+      for (int k = 0; k < p.length - 1; k++) {
+        if (p[k] == '\n')
+          newlines[i]++;
+      }
+      totalLength += p.length;
+    }
+
+    // the byte classes: 0 for the bytes that do not occur in any pattern
+    classes = new int[256];
+    int nc = 1;
+    for (byte[] p : encoded) {
+      for (byte b : p) {
+        if (classes[b & 0xff] == 0)
+          classes[b & 0xff] = nc++;
+      }
+    }
+    classCount = nc;
+
+    // the trie
+    int maxStates = totalLength + 1;
+    int[] trie = new int[maxStates * nc];
+    Arrays.fill(trie, -1);
+    List<List<Integer>> ends = new ArrayList<List<Integer>>();
+    ends.add(null);
+    int states = 1;
+    for (int i = 0; i < n; i++) {
+      int s = 0;
+      for (byte b : encoded[i]) {
+        int c = classes[b & 0xff];
+        if (trie[s * nc + c] < 0) {
+          trie[s * nc + c] = states++;
+          ends.add(null);
+        }
+        s = trie[s * nc + c];
+      }
+      if (ends.get(s) == null)
+        ends.set(s, new ArrayList<Integer>());
+      ends.get(s).add(i);
+    }
+
+    // the automaton: breadth-first, completing the transitions via the
+    // failure links and inheriting the outputs of the failure states
+    delta = Arrays.copyOf(trie, states * nc);
+    outputs = new int[states][];
+    int[] fail = new int[states];
+    int[] queue = new int[states];
+    int head = 0, tail = 0;
+    for (int c = 0; c < nc; c++) {
+      int t = delta[c];
+      if (t < 0) {
+        delta[c] = 0;
+      } else {
+        fail[t] = 0;
+        queue[tail++] = t;
+      }
+    }
+    while (head < tail) {
+      int s = queue[head++];
+      outputs[s] = concat(ends.get(s), outputs[fail[s]]);
+      for (int c = 0; c < nc; c++) {
+        int t = delta[s * nc + c];
+        if (t < 0) {
+          delta[s * nc + c] = delta[fail[s] * nc + c];
+        } else {
+          fail[t] = delta[fail[s] * nc + c];
+          queue[tail++] = t;
+        }
+      }
+    }
+
+    // the prefilter
+    first = new boolean[256];
+    int firstCount = 0;
+    for (byte[] p : encoded) {
+      if (!first[p[0] & 0xff]) {
+        first[p[0] & 0xff] = true;
+        firstCount++;
+      }
+    }
+    if (firstCount <= MAX_SWAR_BYTES) {
+      firstMasks = new long[firstCount];
+      int k = 0;
+      for (int b = 0; b < 256; b++) {
+        if (first[b])
+          firstMasks[k++] = ONES * b;
+      }
+    } else {
+      firstMasks = null;
+    }
+  }
+
+  /**
+   * @effects returns the pattern ids <tt>own</tt> followed by
+   *          <tt>inherited</tt>, or <tt>null</tt> if there are none
+   */
+  private static int[] concat(List<Integer> own, int[] inherited) {
+    int n = (own != null) ? own.size() : 0;
+    if (n == 0)
+      return inherited;
+
+    int m = (inherited != null) ? inherited.length : 0;
+    int[] result = new int[n + m];
+    for (int i = 0; i < n; i++) {
+      result[i] = own.get(i);
+    }
+    if (m > 0)
+      System.arraycopy(inherited, 0, result, n, m);
+
+    return result;
+  }
+
+  public int getPatternCount() {
+    return patterns.size();
+  }
+
+  /**
+   * @requires 0 <= id < getPatternCount()
+   */
+  public String getPattern(int id) {
+    return patterns.get(id);
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * @overview Receives the matches of a search.
+   */
+  public static interface MatchListener {
+    /**
+     * @effects handles a match of the pattern whose id is <tt>pattern</tt>,
+     *          which starts at byte <tt>offset</tt> of line <tt>line</tt>
+     *          (numbered from 1)
+     */
+    void match(int pattern, long offset, long line);
+  }
+
+  /**
+   * @overview A match of a pattern.
+   */
+  public static class Match {
+    private final int pattern;
+    private final long offset;
+    private final long line;
+
+    public Match(int pattern, long offset, long line) {
+      this.pattern = pattern;
+      this.offset = offset;
+      this.line = line;
+    }
+
+    /** the id of the pattern */
+    public int getPattern() {
+      return pattern;
+    }
+
+    /** the byte offset at which the match starts */
+    public long getOffset() {
+      return offset;
+    }
+
+    /** the line (numbered from 1) at which the match starts */
+    public long getLine() {
+      return line;
+    }
+
+    public String toString() {
+      return "Match(" + pattern + ", " + offset + ", " + line + ")";
+    }
+  }
+
+  /**
+   * @effects <pre>
+   *     if path or listener is null
+   *      throws NullPointerException
+   *     else if path does not exist OR failed to read it
+   *      throws NotPossibleException
+   *     else
+   *      passes each match of the patterns in the file at path to
+   *      listener, in the order of their end offsets (and longest
+   *      first for matches that end at the same offset)
+   *      </pre>
+   *      Overlapping matches are all reported. The file is mapped in
+   *      windows, so files larger than 2GB are supported.
+   */
+  public void search(String path, MatchListener listener)
+  throws NullPointerException, NotPossibleException {
+    if (path == null || listener == null)
+      throw new NullPointerException("MultiSearch.search: path or listener is null");
+
+    FileChannel channel = FileHandler.openChannel(path);
+    try {
+      long size = channel.size();
+      Scan scan = new Scan(listener);
+      for (long base = 0; base < size; base += WINDOW_SIZE) {
+        ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, base,
+            Math.min(WINDOW_SIZE, size - base));
+        scan.run(window, base);
+      }
+    } catch (IOException e) {
+      throw new NotPossibleException("MultiSearch.search: failed to read file " + path);
+    } finally {
+      FileHandler.close(channel);
+    }
+  }
+
+  /**
+   * @effects returns the matches of the patterns in the file at
+   *          <tt>path</tt>, as in {@link #search(String, MatchListener)}
+   */
+  public List<Match> search(String path)
+  throws NullPointerException, NotPossibleException {
+    final List<Match> matches = new ArrayList<Match>();
+    search(path, new MatchListener() {
+      public void match(int pattern, long offset, long line) {
+        matches.add(new Match(pattern, offset, line));
+      }
+    });
+
+    return matches;
+  }
+
+  /**
+   * @effects passes each match of the patterns in the remaining bytes of
+   *          <tt>buf</tt> to <tt>listener</tt>, as in
+   *          {@link #search(String, MatchListener)}; offsets are relative to
+   *          the position of <tt>buf</tt>
+   */
+  public void search(ByteBuffer buf, MatchListener listener) {
+    ByteBuffer b = buf.slice();
+    new Scan(listener).run(b, 0);
+  }
+
+  /**
+   * @overview The state of a scan of a file, which may be split into
+   *           consecutive windows.
+   */
+  private class Scan {
+    private final MatchListener listener;
+    /** the state of the automaton */
+    private int state;
+    /** the number of the line at offset <tt>counted</tt> */
+    private long line = 1;
+    /** the offset up to which the lines have been counted */
+    private long counted;
+
+    Scan(MatchListener listener) {
+      this.listener = listener;
+    }
+
+    /**
+     * @effects scans <tt>buf[0..limit)</tt>, which starts at offset
+     *          <tt>base</tt> of the file
+     */
+    void run(ByteBuffer buf, long base) {
+      final int[] delta = MultiSearch.this.delta;
+      final int[] classes = MultiSearch.this.classes;
+      final int nc = classCount;
+      int s = state;
+      int limit = buf.limit();
+
+      for (int i = 0; i < limit; i++) {
+        if (s == 0) {
+          i = skip(buf, i, limit);
+          if (i == limit)
+            break;
+        }
+
+        s = delta[s * nc + classes[buf.get(i) & 0xff]];
+        int[] out = outputs[s];
+        if (out != null) {
+          // the line of the last byte of the match
+          countLines(buf, base, base + i);
+          for (int p : out) {
+            listener.match(p, base + i - lengths[p] + 1, line - newlines[p]);
+          }
+        }
+      }
+
+      countLines(buf, base, base + limit);
+      state = s;
+    }
+
+    /**
+     * @effects counts the lines of <tt>buf</tt> up to the file offset
+     *          <tt>to</tt>
+     */
+    private void countLines(ByteBuffer buf, long base, long to) {
+      for (int i = (int) (counted - base), end = (int) (to - base); i < end; i++) {
+        if (buf.get(i) == '\n')
+          line++;
+      }
+      counted = Math.max(counted, to);
+    }
+  }
+
+  /**
+   * @effects returns the index of the first byte of <tt>buf[i..limit)</tt>
+   *          that can begin a pattern, or <tt>limit</tt>
+   */
+  private int skip(ByteBuffer buf, int i, int limit) {
+    if (firstMasks != null) {
+      // test 8 bytes at a time for any of the first bytes
+      words: while (i + 8 <= limit) {
+        long w = buf.getLong(i);
+        for (long m : firstMasks) {
+          long x = w ^ m;
+          if (((x - ONES) & ~x & HIGHS) != 0)
+            break words;
+        }
+        i += 8;
+      }
+    }
+
+    while (i < limit && !first[buf.get(i) & 0xff]) {
+      i++;
+    }
+
+    return i;
+  }
+}
@@ -0,0 +1,651 @@
+package utils.fileio;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import utils.NotPossibleException;
+
+/**
+ * @overview A cross-reference of the words of a set of text files: maps each
+ *           word to its occurrences, i.e. the file, line and column at which it
+ *           occurs.
+ *
+ *           <p>A word is a maximal sequence of letters and digits, and is
+ *           indexed in lower case. Lines and columns are numbered from 1;
+ *           files are numbered from 0 in the order that they were added.
+ *
+ *           <p>The files are tokenized in parallel, in batches. The index is
+ *           split into shards by the hash code of the words, and the shards
+ *           are updated in parallel. The occurrences of a word are kept in a
+ *           single byte array of delta-encoded variable-length integers
+ *           (usually 2-3 bytes per occurrence), rather than as a list of
+ *           boxed integers.
+ *
+ * @attributes
+ *  files     List<String>
+ *  charset   Charset
+ *
+ * @author dmle
+ */
+public class Xref {
+  /** the number of shards of the index */
+  static final int SHARDS = 64;
+
+  private final Charset charset;
+  private final ForkJoinPool pool;
+
+  /** the paths of the files, indexed by file id */
+  private final List<String> files;
+  /** the last-modified times and sizes of the files when they were read */
+  private final List<Long> fileModified;
+  private final List<Long> fileSizes;
+  /** the shards of the index, each mapping a word to its {@link Postings} */
+  private final HashMap<String, Postings>[] shards;
+
+  /** the sorted words of this (computed on demand) */
+  private String[] sortedTerms;
+
+  /**
+   * @effects initialise this as an empty cross-reference of files encoded in
+   *          the platform's default charset
+   */
+  public Xref() {
+    this(Charset.defaultCharset());
+  }
+
+  /**
+   * @effects initialise this as an empty cross-reference of files encoded in
+   *          <tt>charset</tt>, which uses the common fork-join pool
+   */
+  public Xref(Charset charset) {
+    this(charset, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @effects initialise this as an empty cross-reference of files encoded in
+   *          <tt>charset</tt>, which uses the tasks of <tt>pool</tt>
+   */
+  @SuppressWarnings("unchecked")
+  public Xref(Charset charset, ForkJoinPool pool) {
+    this.charset = charset;
+    this.pool = pool;
+    files = new ArrayList<String>();
+    fileModified = new ArrayList<Long>();
+    fileSizes = new ArrayList<Long>();
+    shards = new HashMap[SHARDS];
+    for (int i = 0; i < SHARDS; i++) {
+      shards[i] = new HashMap<String, Postings>();
+    }
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR failed to read it
+   *      throws NotPossibleException
+   *     else
+   *      adds the file at path to this
+   *      </pre>
+   */
+  public void addFile(String path)
+  throws NullPointerException, NotPossibleException {
+    addFiles(Arrays.asList(path));
+  }
+
+  /**
+   * @effects <pre>
+   *     if paths contains null
+   *      throws NullPointerException
+   *     else if a file in paths does not exist OR failed to read it
+   *      throws NotPossibleException
+   *     else
+   *      adds the files at paths to this, in order
+   *      </pre>
+   *      If an exception is thrown, the files of the batches tokenized
+   *      before the failure remain in this.
+   */
+  public synchronized void addFiles(List<String> paths)
+  throws NullPointerException, NotPossibleException {
+    addFiles(paths, new FileTerms[paths.size()]);
+  }
+
+  /**
+   * @effects <pre>
+   *     if paths contains null
+   *      throws NullPointerException
+   *     else if a file in paths does not exist OR failed to read it
+   *      throws NotPossibleException
+   *     else
+   *      adds the files at paths to this, in order, taking the
+   *      words of each file that is in previous and has not changed
+   *      since (i.e. has the same size and last-modified time) from
+   *      previous instead of reading it again
+   *      </pre>
+   */
+  public synchronized void addFiles(List<String> paths, XrefIndex previous)
+  throws NullPointerException, NotPossibleException {
+    addFiles(paths, previous.reuse(paths, charset));
+  }
+
+  /**
+   * @requires reused.length = paths.size()
+   * @effects adds the files <tt>paths</tt> to this, in order, tokenizing those
+   *          that have no words in <tt>reused</tt>
+   */
+  private void addFiles(List<String> paths, FileTerms[] reused)
+  throws NullPointerException, NotPossibleException {
+    int batchSize = 4 * pool.getParallelism();
+    for (int from = 0; from < paths.size(); from += batchSize) {
+      List<String> batch = paths.subList(from,
+          Math.min(paths.size(), from + batchSize));
+
+      // tokenize the files of the batch in parallel
+      FileTerms[] terms = Arrays.copyOfRange(reused, from, from + batch.size());
+      List<TokenizeTask> tasks = new ArrayList<TokenizeTask>(batch.size());
+      for (int i = 0; i < terms.length; i++) {
+        String path = batch.get(i);
+        if (path == null)
+          throw new NullPointerException("Xref.addFiles: null path");
+        if (terms[i] == null)
+          tasks.add(new TokenizeTask(path, charset, i));
+      }
+      pool.invoke(new InvokeAll(tasks));
+
+      for (TokenizeTask t : tasks) {
+        terms[t.index] = t.result;
+      }
+
+      merge(new ArrayList<String>(batch), terms);
+    }
+  }
+
+  /**
+   * @requires paths.size() = terms.length
+   * @effects adds the files <tt>paths</tt>, whose words are <tt>terms</tt>,
+   *          to this
+   */
+  void merge(List<String> paths, final FileTerms[] terms) {
+    final int firstId = files.size();
+    files.addAll(paths);
+    for (FileTerms t : terms) {
+      fileModified.add(t.lastModified);
+      fileSizes.add(t.size);
+    }
+    sortedTerms = null;
+
+    // update the shards in parallel; each shard takes the files in order
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(SHARDS);
+    for (int s = 0; s < SHARDS; s++) {
+      final int shard = s;
+      tasks.add(new RecursiveAction() {
+        protected void compute() {
+          Map<String, Postings> index = shards[shard];
+          for (int f = 0; f < terms.length; f++) {
+            for (Map.Entry<String, Occurrences> e : terms[f].shards[shard].entrySet()) {
+              Postings p = index.get(e.getKey());
+              if (p == null) {
+                p = new Postings();
+                index.put(e.getKey(), p);
+              }
+              p.append(firstId + f, e.getValue());
+            }
+          }
+        }
+      });
+    }
+    pool.invoke(new InvokeAll(tasks));
+  }
+
+  /**
+   * @effects returns the number of files of this
+   */
+  public synchronized int getFileCount() {
+    return files.size();
+  }
+
+  /**
+   * @requires 0 <= id < getFileCount()
+   * @effects returns the path of the file whose id is <tt>id</tt>
+   */
+  public synchronized String getFileName(int id) {
+    return files.get(id);
+  }
+
+  /**
+   * @requires 0 <= id < getFileCount()
+   * @effects returns the last-modified time of the file whose id is
+   *          <tt>id</tt>, when it was read
+   */
+  public synchronized long getFileLastModified(int id) {
+    return fileModified.get(id);
+  }
+
+  /**
+   * @requires 0 <= id < getFileCount()
+   * @effects returns the size of the file whose id is <tt>id</tt>, when it
+   *          was read
+   */
+  public synchronized long getFileSize(int id) {
+    return fileSizes.get(id);
+  }
+
+  /**
+   * @effects <pre>
+   *     if failed to write the index
+   *      throws NotPossibleException
+   *     else
+   *      writes this to the file at indexPath in the format of
+   *      XrefIndex, replacing any existing file
+   *      </pre>
+   *
+   * @see XrefIndex#open(String)
+   */
+  public synchronized void write(String indexPath) throws NotPossibleException {
+    XrefIndex.write(this, indexPath);
+  }
+
+  /**
+   * @effects <pre>
+   *     if a file in paths does not exist OR failed to read it OR
+   *      failed to read or write the index
+   *      throws NotPossibleException
+   *     else
+   *      returns a cross-reference of the files at paths, reusing the
+   *      words of the files that have not changed since the index at
+   *      indexPath (if it exists) was written, and writes it to
+   *      indexPath
+   *      </pre>
+   */
+  public static Xref update(String indexPath, List<String> paths, Charset charset)
+  throws NotPossibleException {
+    Xref xref = new Xref(charset);
+    if (new File(indexPath).isFile()) {
+      XrefIndex previous = XrefIndex.open(indexPath);
+      try {
+        xref.addFiles(paths, previous);
+      } finally {
+        previous.close();
+      }
+    } else {
+      xref.addFiles(paths);
+    }
+
+    xref.write(indexPath);
+    return xref;
+  }
+
+  /**
+   * @effects returns the number of distinct words of this
+   */
+  public synchronized int getTermCount() {
+    int n = 0;
+    for (Map<String, Postings> shard : shards) {
+      n += shard.size();
+    }
+    return n;
+  }
+
+  /**
+   * @effects returns the words of this, in ascending order
+   */
+  public synchronized String[] terms() {
+    if (sortedTerms == null) {
+      String[] terms = new String[getTermCount()];
+      int i = 0;
+      for (Map<String, Postings> shard : shards) {
+        for (String t : shard.keySet()) {
+          terms[i++] = t;
+        }
+      }
+      Arrays.parallelSort(terms);
+      sortedTerms = terms;
+    }
+
+    return sortedTerms.clone();
+  }
+
+  /**
+   * @effects returns the number of occurrences of <tt>term</tt> in this
+   */
+  public synchronized int getOccurrenceCount(String term) {
+    Postings p = postings(term);
+    return (p != null) ? p.count : 0;
+  }
+
+  /**
+   * @effects returns the occurrences of <tt>term</tt> (which is matched in
+   *          lower case) as an array <tt>[file0, line0, col0, file1, line1,
+   *          col1, ...]</tt>, ordered by file, line and column; or an empty
+   *          array if <tt>term</tt> does not occur in this
+   */
+  public synchronized int[] lookup(String term) {
+    Postings p = postings(term);
+    return (p != null) ? p.decode() : new int[0];
+  }
+
+  /**
+   * @effects returns a report of the cross-reference, containing one line for
+   *          each word (in ascending order) followed by its occurrences in the
+   *          form <tt>file:line:col</tt>
+   */
+  public synchronized String report() {
+    final String linesep = System.getProperty("line.separator");
+    StringBuilder sb = new StringBuilder();
+    for (String term : terms()) {
+      sb.append(term);
+      int[] occ = lookup(term);
+      for (int i = 0; i < occ.length; i += 3) {
+        sb.append(i == 0 ? "\t" : ", ").append(files.get(occ[i])).append(':')
+            .append(occ[i + 1]).append(':').append(occ[i + 2]);
+      }
+      sb.append(linesep);
+    }
+
+    return sb.toString();
+  }
+
+  public synchronized String toString() {
+    return "Xref(files=" + files.size() + ", terms=" + getTermCount() + ")";
+  }
+
+  /**
+   * @effects returns the postings of <tt>term</tt> or <tt>null</tt>
+   */
+  private Postings postings(String term) {
+    String t = normalize(term);
+    return shards[shardOf(t)].get(t);
+  }
+
+  /**
+   * @effects returns <tt>term</tt> in lower case, converted char by char as
+   *          the words of the files are (i.e. independently of the default
+   *          locale)
+   */
+  static String normalize(String term) {
+    int n = term.length();
+    StringBuilder sb = new StringBuilder(n);
+    for (int i = 0; i < n; i++) {
+      sb.append(Character.toLowerCase(term.charAt(i)));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @effects returns the shard of the word <tt>term</tt>
+   */
+  static int shardOf(String term) {
+    return (term.hashCode() & 0x7fffffff) % SHARDS;
+  }
+
+  /**
+   * @effects returns an iterator over the (word, postings) entries of this, in
+   *          no particular order
+   */
+  Iterator<Map.Entry<String, Postings>> postingsIterator() {
+    return new Iterator<Map.Entry<String, Postings>>() {
+      private int shard = 0;
+      private Iterator<Map.Entry<String, Postings>> it = shards[0].entrySet().iterator();
+
+      public boolean hasNext() {
+        while (!it.hasNext() && shard < SHARDS - 1) {
+          it = shards[++shard].entrySet().iterator();
+        }
+        return it.hasNext();
+      }
+
+      public Map.Entry<String, Postings> next() {
+        hasNext();
+        return it.next();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * @effects reads the file at <tt>path</tt> and returns its words and their
+   *          occurrences
+   */
+  static FileTerms tokenize(String path, Charset charset)
+  throws NotPossibleException {
+    // read the attributes before the content, so that a change made while
+    // reading is detected by the next update
+    File f = new File(path);
+    final FileTerms terms = new FileTerms(f.lastModified(), f.length());
+    final StringBuilder word = new StringBuilder();
+
+    FileHandler.forEachLine(path, charset, new Consumer<CharSequence>() {
+      private int line = 0;
+
+      public void accept(CharSequence text) {
+        line++;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+          char c = text.charAt(i);
+          if (!Character.isLetterOrDigit(c)) {
+            i++;
+            continue;
+          }
+
+          int start = i;
+          word.setLength(0);
+          while (i < n && Character.isLetterOrDigit(c = text.charAt(i))) {
+            word.append(Character.toLowerCase(c));
+            i++;
+          }
+          terms.add(word.toString(), line, start + 1);
+        }
+      }
+    });
+
+    return terms;
+  }
+
+  /**
+   * @overview The words of a file and their occurrences in it, split into
+   *           the same shards as the index.
+   */
+  static class FileTerms {
+    @SuppressWarnings("unchecked")
+    final HashMap<String, Occurrences>[] shards = new HashMap[SHARDS];
+    /** the last-modified time and size of the file when it was read */
+    final long lastModified;
+    final long size;
+
+    FileTerms(long lastModified, long size) {
+      this.lastModified = lastModified;
+      this.size = size;
+      for (int i = 0; i < SHARDS; i++) {
+        shards[i] = new HashMap<String, Occurrences>();
+      }
+    }
+
+    void add(String term, int line, int col) {
+      HashMap<String, Occurrences> shard = shards[shardOf(term)];
+      Occurrences occ = shard.get(term);
+      if (occ == null) {
+        occ = new Occurrences();
+        shard.put(term, occ);
+      }
+      occ.add(line, col);
+    }
+  }
+
+  /**
+   * @overview The (line, column) occurrences of a word in a file, in order, as
+   *           a growable array of primitive pairs.
+   */
+  static class Occurrences {
+    int[] pairs = new int[4];
+    int size;
+
+    void add(int line, int col) {
+      if (size + 2 > pairs.length)
+        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+      pairs[size++] = line;
+      pairs[size++] = col;
+    }
+  }
+
+  /**
+   * @overview The occurrences of a word in all the files, encoded as a
+   *           sequence of groups (one per file, in ascending file order) of
+   *           variable-length integers:
+   *           <pre>
+   *             fileDelta count (lineDelta col)*
+   *           </pre>
+   *           where <tt>fileDelta</tt> is the difference from the previous
+   *           group's file id (minus 1), and <tt>lineDelta</tt> is the
+   *           difference from the previous line in the same group.
+   */
+  static class Postings {
+    byte[] data = new byte[8];
+    int length;
+    /** the number of occurrences */
+    int count;
+    /** the file id of the last group */
+    int lastFile = -1;
+
+    /**
+     * @requires file > lastFile
+     * @effects appends the occurrences <tt>occ</tt> in the file
+     *          <tt>file</tt> to this
+     */
+    void append(int file, Occurrences occ) {
+      int n = occ.size / 2;
+      writeVarint(file - lastFile - 1);
+      writeVarint(n);
+      int prevLine = 0;
+      for (int i = 0; i < occ.size; i += 2) {
+        writeVarint(occ.pairs[i] - prevLine);
+        writeVarint(occ.pairs[i + 1]);
+        prevLine = occ.pairs[i];
+      }
+      lastFile = file;
+      count += n;
+    }
+
+    /**
+     * @effects returns the occurrences of this as (file, line, col) triples
+     */
+    int[] decode() {
+      return decode(data, 0, length, count);
+    }
+
+    /**
+     * @effects decodes the <tt>count</tt> occurrences encoded in
+     *          <tt>data[from..to)</tt> and returns them as (file, line, col)
+     *          triples
+     */
+    static int[] decode(byte[] data, int from, int to, int count) {
+      int[] result = new int[count * 3];
+      int[] pos = { from };
+      int file = -1;
+      int k = 0;
+      while (pos[0] < to) {
+        file += readVarint(data, pos) + 1;
+        int n = readVarint(data, pos);
+        int line = 0;
+        for (int i = 0; i < n; i++) {
+          line += readVarint(data, pos);
+          result[k++] = file;
+          result[k++] = line;
+          result[k++] = readVarint(data, pos);
+        }
+      }
+
+      return result;
+    }
+
+    private void writeVarint(int v) {
+      if (length + 5 > data.length)
+        data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+      while ((v & ~0x7f) != 0) {
+        data[length++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      data[length++] = (byte) v;
+    }
+
+    /**
+     * @effects reads the variable-length integer at <tt>data[pos[0]]</tt>,
+     *          advances <tt>pos[0]</tt> past it and returns it
+     */
+    static int readVarint(byte[] data, int[] pos) {
+      int p = pos[0];
+      int v = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[p++];
+        v |= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+      pos[0] = p;
+      return v;
+    }
+  }
+
+  /**
+   * @overview A task that tokenizes a file.
+   */
+  private static class TokenizeTask extends RecursiveAction {
+    private final String path;
+    private final Charset charset;
+    /** the index of the file in its batch */
+    private final int index;
+    private FileTerms result;
+
+    TokenizeTask(String path, Charset charset, int index) {
+      this.path = path;
+      this.charset = charset;
+      this.index = index;
+    }
+
+    protected void compute() {
+      result = tokenize(path, charset);
+    }
+  }
+
+  /**
+   * @overview A task that runs a list of tasks in parallel.
+   */
+  private static class InvokeAll extends RecursiveAction {
+    private final List<? extends ForkJoinTask<?>> tasks;
+
+    InvokeAll(List<? extends ForkJoinTask<?>> tasks) {
+      this.tasks = tasks;
+    }
+
+    protected void compute() {
+      invokeAll(tasks);
+    }
+  }
+
+  /**
+   * Cross-references the files given as arguments and prints the report.
+   */
+  public static void main(String[] args) {
+    Xref xref = new Xref();
+    xref.addFiles(Arrays.asList(args));
+    System.out.print(xref.report());
+  }
+}
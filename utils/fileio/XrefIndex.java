@@ -0,0 +1,409 @@
+package utils.fileio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import utils.NotPossibleException;
+
+/**
+ * @overview A read-only, memory-mapped cross-reference index written by
+ *           {@link Xref#write(String)}. Opening an index only reads its
+ *           header: the file table, term dictionary and postings are read
+ *           from the mapping as they are queried, so a reopened index answers
+ *           queries immediately without loading it onto the heap.
+ *
+ *           <p>The index file has the following layout (all integers are
+ *           big-endian):
+ *           <pre>
+ *   header      magic:int version:int fileCount:int termCount:int
+ *               filesOffset:int dictOffset:int termsOffset:int
+ *               postingsOffset:int charsetLength:short charset:byte*
+ *   files       fileCount x (lastModified:long size:long
+ *                            pathOffset:int pathLength:int)
+ *               followed by the UTF-8 paths
+ *   dictionary  termCount x (termOffset:int termLength:int
+ *                            postingsOffset:int postingsLength:int
+ *                            count:int)
+ *               sorted by the UTF-8 bytes of the terms
+ *   terms       the UTF-8 terms
+ *   postings    the postings of the terms, as in {@link Xref}
+ *           </pre>
+ *
+ *           <p>The offsets are relative to the start of the file, except the
+ *           term and postings offsets of the dictionary, which are relative
+ *           to the start of their sections. An index is limited to 2GB.
+ *
+ * @author dmle
+ */
+public class XrefIndex {
+  /** "XREF" */
+  private static final int MAGIC = 0x58524546;
+  private static final int VERSION = 1;
+
+  private static final int FILE_ENTRY_SIZE = 24;
+  private static final int DICT_ENTRY_SIZE = 20;
+
+  private final String path;
+  private ByteBuffer buf;
+
+  private final Charset charset;
+  private final int fileCount;
+  private final int termCount;
+  private final int filesOffset;
+  private final int dictOffset;
+  private final int termsOffset;
+  private final int postingsOffset;
+
+  private XrefIndex(String path, ByteBuffer buf) throws NotPossibleException {
+    this.path = path;
+    this.buf = buf;
+
+    if (buf.capacity() < 34 || buf.getInt(0) != MAGIC)
+      throw new NotPossibleException("XrefIndex: not an index file " + path);
+    if (buf.getInt(4) != VERSION)
+      throw new NotPossibleException("XrefIndex: unsupported version "
+          + buf.getInt(4) + " of index file " + path);
+
+    fileCount = buf.getInt(8);
+    termCount = buf.getInt(12);
+    filesOffset = buf.getInt(16);
+    dictOffset = buf.getInt(20);
+    termsOffset = buf.getInt(24);
+    postingsOffset = buf.getInt(28);
+    charset = Charset.forName(getString(34, buf.getShort(32)));
+  }
+
+  /**
+   * @effects <pre>
+   *     if path is null
+   *      throws NullPointerException
+   *     else if path does not exist OR is not an index file OR
+   *      failed to map it
+   *      throws NotPossibleException
+   *     else
+   *      opens and returns the index at path
+   *      </pre>
+   */
+  public static XrefIndex open(String path)
+  throws NullPointerException, NotPossibleException {
+    return new XrefIndex(path, FileHandler.mapFile(path));
+  }
+
+  /**
+   * @effects releases this; it must not be used afterwards. The mapping itself
+   *          is released when it is garbage-collected.
+   */
+  public void close() {
+    buf = null;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  public int getFileCount() {
+    return fileCount;
+  }
+
+  /**
+   * @requires 0 <= id < getFileCount()
+   */
+  public String getFileName(int id) {
+    int e = filesOffset + id * FILE_ENTRY_SIZE;
+    return getString(buf.getInt(e + 16), buf.getInt(e + 20));
+  }
+
+  /**
+   * @requires 0 <= id < getFileCount()
+   * @effects returns the last-modified time of the file when it was indexed
+   */
+  public long getFileLastModified(int id) {
+    return buf.getLong(filesOffset + id * FILE_ENTRY_SIZE);
+  }
+
+  /**
+   * @requires 0 <= id < getFileCount()
+   * @effects returns the size of the file when it was indexed
+   */
+  public long getFileSize(int id) {
+    return buf.getLong(filesOffset + id * FILE_ENTRY_SIZE + 8);
+  }
+
+  public int getTermCount() {
+    return termCount;
+  }
+
+  /**
+   * @requires 0 <= i < getTermCount()
+   * @effects returns the <tt>i</tt>-th term in the order of the dictionary
+   */
+  public String getTerm(int i) {
+    int e = dictOffset + i * DICT_ENTRY_SIZE;
+    return getString(termsOffset + buf.getInt(e), buf.getInt(e + 4));
+  }
+
+  /**
+   * @effects returns the number of occurrences of <tt>term</tt> in this
+   */
+  public int getOccurrenceCount(String term) {
+    int i = find(term);
+    return (i >= 0) ? buf.getInt(dictOffset + i * DICT_ENTRY_SIZE + 16) : 0;
+  }
+
+  /**
+   * @effects returns the occurrences of <tt>term</tt> as (file, line, col)
+   *          triples, as in {@link Xref#lookup(String)}
+   */
+  public int[] lookup(String term) {
+    int i = find(term);
+    return (i >= 0) ? decode(i) : new int[0];
+  }
+
+  /**
+   * @effects returns the index in the dictionary of <tt>term</tt> (which is
+   *          matched in lower case, as normalised by {@link Xref} when the
+   *          index was written), or <tt>-1</tt> if it is not in this
+   */
+  private int find(String term) {
+    byte[] key = Xref.normalize(term).getBytes(StandardCharsets.UTF_8);
+
+    int lo = 0;
+    int hi = termCount - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int e = dictOffset + mid * DICT_ENTRY_SIZE;
+      int c = compare(termsOffset + buf.getInt(e), buf.getInt(e + 4), key);
+      if (c < 0)
+        lo = mid + 1;
+      else if (c > 0)
+        hi = mid - 1;
+      else
+        return mid;
+    }
+
+    return -1;
+  }
+
+  /**
+   * @effects compares the <tt>length</tt> bytes of this at <tt>offset</tt>
+   *          with <tt>key</tt>, as unsigned bytes
+   */
+  private int compare(int offset, int length, byte[] key) {
+    int n = Math.min(length, key.length);
+    for (int i = 0; i < n; i++) {
+      int c = (buf.get(offset + i) & 0xff) - (key[i] & 0xff);
+      if (c != 0)
+        return c;
+    }
+    return length - key.length;
+  }
+
+  /**
+   * @effects decodes the postings of the <tt>i</tt>-th term
+   */
+  private int[] decode(int i) {
+    int e = dictOffset + i * DICT_ENTRY_SIZE;
+    byte[] data = new byte[buf.getInt(e + 12)];
+    ByteBuffer src = buf.duplicate();
+    src.position(postingsOffset + buf.getInt(e + 8));
+    src.get(data);
+    return Xref.Postings.decode(data, 0, data.length, buf.getInt(e + 16));
+  }
+
+  private String getString(int offset, int length) {
+    byte[] b = new byte[length];
+    ByteBuffer src = buf.duplicate();
+    src.position(offset);
+    src.get(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @effects returns, for each path in <tt>paths</tt>, the words of the file
+   *          at that path taken from this if the file is in this and has not
+   *          changed since, or <tt>null</tt> if the file must be read again
+   */
+  Xref.FileTerms[] reuse(List<String> paths, Charset charset) {
+    Xref.FileTerms[] result = new Xref.FileTerms[paths.size()];
+    if (!this.charset.equals(charset))
+      return result;
+
+    Map<String, Integer> ids = new HashMap<String, Integer>();
+    for (int id = 0; id < fileCount; id++) {
+      ids.put(getFileName(id), id);
+    }
+
+    // maps the id of each unchanged file to its words
+    Map<Integer, Xref.FileTerms> unchanged = new HashMap<Integer, Xref.FileTerms>();
+    for (int i = 0; i < result.length; i++) {
+      Integer id = ids.get(paths.get(i));
+      if (id == null)
+        continue;
+
+      File f = new File(paths.get(i));
+      if (f.lastModified() == getFileLastModified(id)
+          && f.length() == getFileSize(id)) {
+        Xref.FileTerms terms = unchanged.get(id);
+        if (terms == null) {
+          terms = new Xref.FileTerms(getFileLastModified(id), getFileSize(id));
+          unchanged.put(id, terms);
+        }
+        result[i] = terms;
+      }
+    }
+
+    if (unchanged.isEmpty())
+      return result;
+
+    // invert the postings of the unchanged files
+    for (int t = 0; t < termCount; t++) {
+      int[] occ = decode(t);
+      String term = null;
+      for (int k = 0; k < occ.length; k += 3) {
+        Xref.FileTerms terms = unchanged.get(occ[k]);
+        if (terms != null) {
+          if (term == null)
+            term = getTerm(t);
+          terms.add(term, occ[k + 1], occ[k + 2]);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @effects writes <tt>xref</tt> to the file at <tt>indexPath</tt>,
+   *          replacing it atomically if it exists
+   */
+  static void write(Xref xref, String indexPath) throws NotPossibleException {
+    // the terms, sorted by their UTF-8 bytes
+    List<Object[]> terms = new ArrayList<Object[]>(xref.getTermCount());
+    for (Iterator<Map.Entry<String, Xref.Postings>> it = xref.postingsIterator(); it.hasNext();) {
+      Map.Entry<String, Xref.Postings> e = it.next();
+      terms.add(new Object[] { e.getKey().getBytes(StandardCharsets.UTF_8), e.getValue() });
+    }
+    Object[][] sorted = terms.toArray(new Object[terms.size()][]);
+    Arrays.parallelSort(sorted, new Comparator<Object[]>() {
+      public int compare(Object[] a, Object[] b) {
+        byte[] x = (byte[]) a[0];
+        byte[] y = (byte[]) b[0];
+        int n = Math.min(x.length, y.length);
+        for (int i = 0; i < n; i++) {
+          int c = (x[i] & 0xff) - (y[i] & 0xff);
+          if (c != 0)
+            return c;
+        }
+        return x.length - y.length;
+      }
+    });
+
+    int fileCount = xref.getFileCount();
+    byte[][] paths = new byte[fileCount][];
+    long pathsLength = 0;
+    for (int id = 0; id < fileCount; id++) {
+      paths[id] = xref.getFileName(id).getBytes(StandardCharsets.UTF_8);
+      pathsLength += paths[id].length;
+    }
+
+    long termsLength = 0;
+    long postingsLength = 0;
+    for (Object[] t : sorted) {
+      termsLength += ((byte[]) t[0]).length;
+      postingsLength += ((Xref.Postings) t[1]).length;
+    }
+
+    byte[] charset = xref.getCharset().name().getBytes(StandardCharsets.UTF_8);
+    long filesOffset = 34 + charset.length;
+    long dictOffset = filesOffset + (long) fileCount * FILE_ENTRY_SIZE + pathsLength;
+    long termsOffset = dictOffset + (long) sorted.length * DICT_ENTRY_SIZE;
+    long postingsOffset = termsOffset + termsLength;
+    if (postingsOffset + postingsLength > Integer.MAX_VALUE)
+      throw new NotPossibleException("XrefIndex.write: index is too large (> 2GB)");
+
+    File target = new File(indexPath);
+    File tmp = new File(indexPath + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(tmp), 1 << 16));
+
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(fileCount);
+      out.writeInt(sorted.length);
+      out.writeInt((int) filesOffset);
+      out.writeInt((int) dictOffset);
+      out.writeInt((int) termsOffset);
+      out.writeInt((int) postingsOffset);
+      out.writeShort(charset.length);
+      out.write(charset);
+
+      int pathOffset = (int) (filesOffset + (long) fileCount * FILE_ENTRY_SIZE);
+      for (int id = 0; id < fileCount; id++) {
+        out.writeLong(xref.getFileLastModified(id));
+        out.writeLong(xref.getFileSize(id));
+        out.writeInt(pathOffset);
+        out.writeInt(paths[id].length);
+        pathOffset += paths[id].length;
+      }
+      for (byte[] p : paths) {
+        out.write(p);
+      }
+
+      int termOffset = 0;
+      int postOffset = 0;
+      for (Object[] t : sorted) {
+        byte[] term = (byte[]) t[0];
+        Xref.Postings p = (Xref.Postings) t[1];
+        out.writeInt(termOffset);
+        out.writeInt(term.length);
+        out.writeInt(postOffset);
+        out.writeInt(p.length);
+        out.writeInt(p.count);
+        termOffset += term.length;
+        postOffset += p.length;
+      }
+      for (Object[] t : sorted) {
+        out.write((byte[]) t[0]);
+      }
+      for (Object[] t : sorted) {
+        Xref.Postings p = (Xref.Postings) t[1];
+        out.write(p.data, 0, p.length);
+      }
+
+      out.close();
+      out = null;
+      Files.move(tmp.toPath(), target.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      tmp.delete();
+      throw new NotPossibleException("XrefIndex.write: failed to write index file " + indexPath);
+    } finally {
+      FileHandler.close(out);
+    }
+  }
+
+  public String toString() {
+    return "XrefIndex(" + path + ", files=" + fileCount + ", terms=" + termCount + ")";
+  }
+}